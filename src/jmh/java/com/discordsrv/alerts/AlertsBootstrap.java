@@ -0,0 +1,56 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts;
+
+import com.discordsrv.alerts.benchmark.stub.StubServer;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Boots the plugin against {@link StubServer} with the given config, without a real server
+ */
+public final class AlertsBootstrap {
+
+    private AlertsBootstrap() {}
+
+    @SuppressWarnings("deprecation")
+    public static Alerts enable(File dataFolder, String config) throws IOException {
+        StubServer.install();
+
+        if (!dataFolder.isDirectory() && !dataFolder.mkdirs()) throw new IOException("Failed to create " + dataFolder);
+        Files.write(new File(dataFolder, "config.yml").toPath(), config.getBytes(StandardCharsets.UTF_8));
+
+        Alerts plugin = new Alerts(
+                new JavaPluginLoader(Bukkit.getServer()),
+                new PluginDescriptionFile("Alerts", "benchmark", Alerts.class.getName()),
+                dataFolder,
+                new File(dataFolder, "Alerts.jar")
+        );
+        plugin.onEnable();
+        if (plugin.getListener() == null) throw new IllegalStateException("Alerts failed to enable, check the log above");
+        return plugin;
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.benchmark;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.AlertsBootstrap;
+import com.discordsrv.alerts.benchmark.stub.StubScheduler;
+import com.discordsrv.alerts.benchmark.stub.StubServer;
+import com.discordsrv.alerts.benchmark.stub.Stubs;
+import com.discordsrv.alerts.listener.AlertListener;
+import org.bukkit.command.CommandSender;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.server.ServerCommandEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AlertListener#runAlertsForEvent(Object)} up to the point where alerts are handed off to async tasks.
+ * Run with {@code -prof gc}: events and commands that no alert triggers on should show (close to) 0 B/op.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlertDispatchBenchmark {
+
+    @Param({"1", "50", "500"})
+    public int alerts;
+
+    private Alerts plugin;
+    private AlertListener listener;
+    private BenchmarkEvent event;
+    private UnmatchedEvent unmatchedEvent;
+    private ServerCommandEvent commandEvent;
+    private ServerCommandEvent unmatchedCommandEvent;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        StringBuilder config = new StringBuilder("Alerts:\n");
+        for (int i = 0; i < alerts; i++) {
+            // half of the alerts are for the event, the other half for a command
+            config.append("  - Trigger: ").append(i % 2 == 0 ? "BenchmarkEvent" : "/gamemode").append('\n')
+                    .append("    Target: benchmark\n")
+                    .append("    Content: \"alert ").append(i).append(" ${violations}\"\n");
+        }
+        plugin = AlertsBootstrap.enable(Files.createTempDirectory("alerts-jmh").toFile(), config.toString());
+        listener = plugin.getListener();
+        StubServer.scheduler().setAsyncMode(StubScheduler.AsyncMode.DISCARD);
+
+        CommandSender console = Stubs.proxy(CommandSender.class);
+        event = new BenchmarkEvent("reach", 7);
+        unmatchedEvent = new UnmatchedEvent();
+        commandEvent = new ServerCommandEvent(console, "minecraft:gamemode creative Notch");
+        unmatchedCommandEvent = new ServerCommandEvent(console, "list");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        plugin.onDisable();
+    }
+
+    @Benchmark
+    public void event() {
+        listener.runAlertsForEvent(event);
+    }
+
+    @Benchmark
+    public void unmatchedEvent() {
+        listener.runAlertsForEvent(unmatchedEvent);
+    }
+
+    @Benchmark
+    public void command() {
+        listener.runAlertsForEvent(commandEvent);
+    }
+
+    @Benchmark
+    public void unmatchedCommand() {
+        listener.runAlertsForEvent(unmatchedCommandEvent);
+    }
+
+    public static class UnmatchedEvent extends Event {
+
+        private static final HandlerList HANDLERS = new HandlerList();
+
+        @Override
+        public HandlerList getHandlers() {
+            return HANDLERS;
+        }
+
+        public static HandlerList getHandlerList() {
+            return HANDLERS;
+        }
+    }
+
+}
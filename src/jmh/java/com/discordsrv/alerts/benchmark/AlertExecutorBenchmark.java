@@ -0,0 +1,89 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.benchmark;
+
+import com.discordsrv.alerts.util.VirtualThreads;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the executors async alerts can run on, with jobs that block like a webhook call or an account link lookup:
+ * an unbounded cached pool of platform threads (what the Bukkit scheduler runs async tasks on) and a virtual thread per job.
+ * The virtual variant needs the Java 21 version of {@link VirtualThreads}, so run the (multi-release) jmh jar on Java 21:
+ * {@code java -jar build/libs/Alerts-1.0.0-jmh.jar AlertExecutor}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlertExecutorBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String executor;
+
+    // alerts fired at once, like a burst of events
+    @Param({"100", "1000"})
+    public int jobs;
+
+    // how long each job blocks for
+    @Param({"5"})
+    public int blockMillis;
+
+    private ExecutorService executorService;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (executor.equals("virtual")) {
+            if (!VirtualThreads.isSupported()) {
+                throw new IllegalStateException("Virtual threads aren't supported, run the jmh jar on Java 21 or newer");
+            }
+            executorService = VirtualThreads.newExecutor("benchmark");
+        } else {
+            executorService = Executors.newCachedThreadPool();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public void blockingJobs() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(jobs);
+        for (int i = 0; i < jobs; i++) {
+            executorService.execute(() -> {
+                try {
+                    Thread.sleep(blockMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+    }
+
+}
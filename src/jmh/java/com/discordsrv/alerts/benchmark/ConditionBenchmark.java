@@ -0,0 +1,86 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.benchmark;
+
+import com.discordsrv.alerts.benchmark.stub.StubServer;
+import com.discordsrv.alerts.benchmark.stub.Stubs;
+import com.discordsrv.alerts.condition.Condition;
+import com.discordsrv.alerts.util.SpELExpressionBuilder;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiled conditions against evaluating the same condition with SpEL
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConditionBenchmark {
+
+    @Param({
+            "violations >= 5",
+            "hackType.toLowerCase() == 'reach'",
+            "#player.world.name == 'world_the_end'",
+            "violations >= 5 && #player.name != 'Notch'"
+    })
+    public String expression;
+
+    private Condition condition;
+    private Player player;
+    private BenchmarkEvent event;
+
+    @Setup
+    public void setup() {
+        StubServer.install();
+        World world = Stubs.proxy(World.class, Collections.singletonMap("getName", "world"));
+        Map<String, Object> playerValues = new HashMap<>();
+        playerValues.put("getName", "Notch");
+        playerValues.put("getWorld", world);
+        player = Stubs.proxy(Player.class, playerValues);
+        event = new BenchmarkEvent("Reach", 7);
+        condition = Condition.parse(expression);
+        if (condition.getCompiled() == null) throw new IllegalStateException(expression + " wasn't compiled");
+    }
+
+    @Benchmark
+    public Boolean spel() {
+        return new SpELExpressionBuilder(condition.getExpression())
+                .withVariable("event", event)
+                .withVariable("player", player)
+                .evaluate(event, Boolean.class);
+    }
+
+    @Benchmark
+    public Boolean compiled() {
+        return new SpELExpressionBuilder(condition)
+                .withVariable("event", event)
+                .withVariable("player", player)
+                .evaluate(event, Boolean.class);
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.benchmark;
+
+import com.discordsrv.alerts.benchmark.stub.Stubs;
+import com.discordsrv.alerts.hook.DiscordSRVHook;
+import github.scarsz.discordsrv.dependencies.jda.api.entities.Emote;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmoteTranslationBenchmark {
+
+    private DiscordSRVHook hook;
+    private List<Emote> emotes;
+
+    @Setup
+    public void setup() {
+        hook = new DiscordSRVHook(null);
+        emotes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Map<String, Object> values = new HashMap<>();
+            values.put("getName", "emote_" + i);
+            values.put("getId", String.valueOf(100000000000000000L + i));
+            values.put("getAsMention", "<:emote_" + i + ":" + (100000000000000000L + i) + ">");
+            emotes.add(Stubs.proxy(Emote.class, values));
+        }
+    }
+
+    @Benchmark
+    public String noEmotes() {
+        return hook.translateEmotes("Notch failed reach check | vl:7 ping:42 tps:20.0", emotes);
+    }
+
+    @Benchmark
+    public String twoEmotes() {
+        return hook.translateEmotes("Notch failed :emote_12: check :emote_499: | vl:7 ping:42 tps:20.0", emotes);
+    }
+
+}
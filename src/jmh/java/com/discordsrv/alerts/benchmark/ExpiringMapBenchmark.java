@@ -0,0 +1,73 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.benchmark;
+
+import com.discordsrv.alerts.collection.ExpiringDualHashBidiMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Readers & a writer sharing one map, locking on the map like its expiry thread does
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpiringMapBenchmark {
+
+    private static final int KEYS = 1024;
+
+    private ExpiringDualHashBidiMap<String, String> map;
+    private String[] keys;
+
+    @Setup
+    public void setup() {
+        map = new ExpiringDualHashBidiMap<>(TimeUnit.MINUTES.toMillis(1));
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "playerviolationevent" + i;
+            map.put(keys[i], "PlayerViolationEvent" + i);
+        }
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public String get() {
+        String key = keys[ThreadLocalRandom.current().nextInt(KEYS)];
+        synchronized (map) {
+            return map.get(key);
+        }
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public String put() {
+        int index = ThreadLocalRandom.current().nextInt(KEYS);
+        synchronized (map) {
+            return map.put(keys[index], "PlayerViolationEvent" + index);
+        }
+    }
+
+}
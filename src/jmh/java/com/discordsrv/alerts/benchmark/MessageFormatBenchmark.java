@@ -0,0 +1,75 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.benchmark;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.util.MessageFormat;
+import com.discordsrv.alerts.util.MessageFormatUtil;
+import github.scarsz.configuralize.DynamicConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageFormatBenchmark {
+
+    private static final String CONFIG = "Alerts:\n"
+            + "  - Trigger: PlayerViolationEvent\n"
+            + "    Target: matrix\n"
+            + "    Content: \"{username} was flagged\"\n"
+            + "    Embed:\n"
+            + "      Color: \"#ff0000\"\n"
+            + "      Author:\n"
+            + "        ImageUrl: \"{embedavatarurl}\"\n"
+            + "        Name: \"{username} failed ${hackType.name().toLowerCase()} check\"\n"
+            + "      Title:\n"
+            + "        Text: \"Anti-cheat\"\n"
+            + "      Fields:\n"
+            + "        - \"Violations;${violations};true\"\n"
+            + "        - \"Ping;{ping};true\"\n"
+            + "      Footer:\n"
+            + "        Text: \"Matrix\"\n"
+            + "        IconUrl: \"https://example.com/matrix.png\"\n"
+            + "      Timestamp: true\n";
+
+    private DynamicConfig config;
+
+    @Setup
+    public void setup() throws Exception {
+        File file = Files.createTempFile("alerts-jmh", ".yml").toFile();
+        Files.write(file.toPath(), CONFIG.getBytes(StandardCharsets.UTF_8));
+        config = new DynamicConfig();
+        config.addSource(Alerts.class, "config", file);
+        config.loadAll();
+    }
+
+    @Benchmark
+    public MessageFormat getMessageFromConfiguration() {
+        return MessageFormatUtil.getMessageFromConfiguration(config, "Alerts.0");
+    }
+
+}
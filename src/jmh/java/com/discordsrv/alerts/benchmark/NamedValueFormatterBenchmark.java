@@ -0,0 +1,88 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.benchmark;
+
+import com.discordsrv.alerts.benchmark.stub.StubServer;
+import com.discordsrv.alerts.benchmark.stub.Stubs;
+import com.discordsrv.alerts.util.NamedValueFormatter;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NamedValueFormatterBenchmark {
+
+    private static final String PLACEHOLDERS = "{username} failed a check | ping:{ping} world:{world} tps:{tps}";
+    private static final String EXPRESSIONS = "{username} failed ${hackType.toLowerCase()} check | vl:${violations} | ${#player.name}";
+
+    private Player player;
+    private BenchmarkEvent event;
+    private Map<String, Object> variables;
+
+    @Setup
+    public void setup() {
+        StubServer.install();
+        World world = Stubs.proxy(World.class, Collections.singletonMap("getName", "world"));
+        Map<String, Object> playerValues = new HashMap<>();
+        playerValues.put("getName", "Notch");
+        playerValues.put("getWorld", world);
+        player = Stubs.proxy(Player.class, playerValues);
+        event = new BenchmarkEvent("Reach", 7);
+
+        variables = new HashMap<>();
+        variables.put("event", event);
+        variables.put("player", player);
+        variables.put("discordsrv", null);
+        variables.put("jda", null);
+    }
+
+    @Benchmark
+    public String format() {
+        return NamedValueFormatter.format(PLACEHOLDERS, key -> {
+            switch (key) {
+                case "username":
+                    return player.getName();
+                case "ping":
+                    return 42;
+                case "world":
+                    return player.getWorld().getName();
+                case "tps":
+                    return "20.0";
+                default:
+                    return "{" + key + "}";
+            }
+        });
+    }
+
+    @Benchmark
+    public String formatExpressions() {
+        return NamedValueFormatter.formatExpressions(EXPRESSIONS, event, variables);
+    }
+
+}
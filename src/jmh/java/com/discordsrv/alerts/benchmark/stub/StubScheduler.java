@@ -0,0 +1,152 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.benchmark.stub;
+
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link BukkitScheduler} backed by thread pools. Sync tasks run on a single "main thread" executor,
+ * async tasks either run on a pool or are discarded (to measure dispatch on its own).
+ */
+public class StubScheduler {
+
+    public enum AsyncMode {
+        RUN,
+        DISCARD
+    }
+
+    private final AtomicInteger taskIds = new AtomicInteger();
+    private final LongAdder discarded = new LongAdder();
+    private final ScheduledExecutorService mainThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Stub Server Thread");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // like CraftScheduler, async tasks run on an unbounded cached pool
+    private final ExecutorService asyncPool = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Stub Scheduler Async");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService asyncTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Stub Scheduler Timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile AsyncMode asyncMode = AsyncMode.RUN;
+    private volatile Thread mainThreadInstance;
+
+    private final BukkitScheduler scheduler = (BukkitScheduler) Proxy.newProxyInstance(
+            BukkitScheduler.class.getClassLoader(), new Class<?>[] {BukkitScheduler.class}, (proxy, method, args) -> invoke(method, args));
+
+    public StubScheduler() {
+        mainThread.execute(() -> mainThreadInstance = Thread.currentThread());
+    }
+
+    public BukkitScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public void setAsyncMode(AsyncMode asyncMode) {
+        this.asyncMode = asyncMode;
+    }
+
+    public long getDiscarded() {
+        return discarded.sum();
+    }
+
+    public boolean isMainThread() {
+        return Thread.currentThread() == mainThreadInstance;
+    }
+
+    public ScheduledExecutorService getMainThread() {
+        return mainThread;
+    }
+
+    private Object invoke(Method method, Object[] args) {
+        String name = method.getName();
+        if (args == null || args.length < 2 || !(args[1] instanceof Runnable)) {
+            return Stubs.defaultValue(method.getReturnType());
+        }
+
+        Runnable runnable = (Runnable) args[1];
+        boolean async = name.contains("Asynchronously");
+        long delay = args.length > 2 ? (long) args[2] : 0;
+        long period = args.length > 3 ? (long) args[3] : -1;
+
+        if (async && period < 0 && asyncMode == AsyncMode.DISCARD) {
+            discarded.increment();
+            return task(null, false);
+        }
+
+        Runnable safe = () -> {
+            try {
+                runnable.run();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        };
+        // delayed & repeating async tasks are timed on one thread and handed off to the pool
+        ScheduledExecutorService timer = async ? asyncTimer : mainThread;
+        Runnable timed = async ? () -> asyncPool.execute(safe) : safe;
+        Future<?> future;
+        if (period > 0) {
+            future = timer.scheduleAtFixedRate(timed, delay * 50, period * 50, TimeUnit.MILLISECONDS);
+        } else if (delay > 0) {
+            future = timer.schedule(timed, delay * 50, TimeUnit.MILLISECONDS);
+        } else {
+            future = async ? asyncPool.submit(safe) : mainThread.submit(safe);
+        }
+        return task(future, !async);
+    }
+
+    private BukkitTask task(Future<?> future, boolean sync) {
+        int id = taskIds.incrementAndGet();
+        Map<String, Object> values = new HashMap<>();
+        values.put("getTaskId", id);
+        values.put("isSync", sync);
+        return (BukkitTask) Proxy.newProxyInstance(BukkitTask.class.getClassLoader(), new Class<?>[] {BukkitTask.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "cancel":
+                    if (future != null) future.cancel(false);
+                    return null;
+                case "isCancelled":
+                    return future != null && future.isCancelled();
+                default:
+                    return values.containsKey(method.getName()) ? values.get(method.getName()) : Stubs.defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    public void shutdown() {
+        asyncTimer.shutdownNow();
+        asyncPool.shutdownNow();
+        mainThread.shutdownNow();
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.benchmark.stub;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A {@link Server} for running the plugin outside of a real server. Only the parts of the API the plugin needs are
+ * implemented, everything else returns default values.
+ */
+public final class StubServer {
+
+    private static final Logger LOGGER = Logger.getLogger("StubServer");
+    private static StubScheduler scheduler;
+
+    private StubServer() {}
+
+    public static synchronized void install() {
+        if (Bukkit.getServer() != null) return;
+        scheduler = new StubScheduler();
+
+        Map<String, Object> pluginManagerValues = new HashMap<>();
+        pluginManagerValues.put("getPlugins", new Plugin[0]);
+        PluginManager pluginManager = Stubs.proxy(PluginManager.class, pluginManagerValues);
+
+        Server server = (Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[] {Server.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getLogger":
+                    return LOGGER;
+                case "getScheduler":
+                    return scheduler.getScheduler();
+                case "getPluginManager":
+                    return pluginManager;
+                case "isPrimaryThread":
+                    return scheduler.isMainThread();
+                case "getName":
+                    return "StubServer";
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "stub";
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "StubServer";
+                default:
+                    return Stubs.defaultValue(method.getReturnType());
+            }
+        });
+        Bukkit.setServer(server);
+    }
+
+    public static StubScheduler scheduler() {
+        return scheduler;
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.harness;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local stand-in for Discord's webhook execution endpoint ({@code POST /api/webhooks/<id>/<token>}).
+ * Responds after a configurable latency, answers a fraction of requests with 429 like Discord's rate limiter does
+ * and records the end-to-end latency of every delivered message.
+ */
+public class FakeWebhookServer {
+
+    // deliveries carry "<alert>:<sequence>:<event nanoTime>" as their content
+    private static final Pattern CONTENT_PATTERN = Pattern.compile("\"content\":\"(\\d+):(\\d+):(\\d+)\"");
+
+    private final HttpServer server;
+    private final long latencyMillis;
+    private final double rateLimitChance;
+    private final long retryAfterMillis;
+
+    private final Set<String> delivered = ConcurrentHashMap.newKeySet();
+    private final List<Long> latencies = new ArrayList<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private final AtomicLong lastDeliveryNanos = new AtomicLong();
+
+    public FakeWebhookServer(long latencyMillis, double rateLimitChance, long retryAfterMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.rateLimitChance = rateLimitChance;
+        this.retryAfterMillis = retryAfterMillis;
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/api/webhooks/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "Fake Webhook Server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public String getWebhookUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/webhooks/123456789012345678/harness-token";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try {
+            byte[] body = read(exchange.getRequestBody());
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, "{\"message\":\"405: Method Not Allowed\",\"code\":0}");
+                return;
+            }
+
+            if (latencyMillis > 0) Thread.sleep(latencyMillis);
+
+            if (rateLimitChance > 0 && ThreadLocalRandom.current().nextDouble() < rateLimitChance) {
+                rateLimited.increment();
+                double seconds = retryAfterMillis / 1000D;
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf((long) Math.ceil(seconds)));
+                exchange.getResponseHeaders().add("X-RateLimit-Reset-After", String.format(Locale.ROOT, "%.3f", seconds));
+                exchange.getResponseHeaders().add("X-RateLimit-Remaining", "0");
+                respond(exchange, 429, String.format(Locale.ROOT,
+                        "{\"message\":\"You are being rate limited.\",\"retry_after\":%.3f,\"global\":false}", seconds));
+                return;
+            }
+
+            Matcher matcher = CONTENT_PATTERN.matcher(new String(body, StandardCharsets.UTF_8));
+            if (!matcher.find()) {
+                malformed.increment();
+                respond(exchange, 400, "{\"message\":\"Cannot send an empty message\",\"code\":50006}");
+                return;
+            }
+
+            long now = System.nanoTime();
+            if (!delivered.add(matcher.group(1) + ":" + matcher.group(2))) {
+                duplicates.increment();
+            } else {
+                synchronized (latencies) {
+                    latencies.add(now - Long.parseLong(matcher.group(3)));
+                }
+                lastDeliveryNanos.accumulateAndGet(now, Math::max);
+            }
+            respond(exchange, 204, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 500, "{}");
+        }
+    }
+
+    private static byte[] read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) outputStream.write(buffer, 0, read);
+        return outputStream.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        if (json == null) {
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+
+    public long getDelivered() {
+        return delivered.size();
+    }
+
+    public long[] getSortedLatencies() {
+        long[] values;
+        synchronized (latencies) {
+            values = latencies.stream().mapToLong(Long::longValue).toArray();
+        }
+        java.util.Arrays.sort(values);
+        return values;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.sum();
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    public long getMalformed() {
+        return malformed.sum();
+    }
+
+    public long getLastDeliveryNanos() {
+        return lastDeliveryNanos.get();
+    }
+
+}
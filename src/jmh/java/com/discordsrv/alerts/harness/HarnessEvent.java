@@ -0,0 +1,56 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.harness;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+/**
+ * A synthetic event carrying its sequence number and creation time, so deliveries can be matched up with events
+ */
+public class HarnessEvent extends Event {
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final long sequence;
+    private final long createdNanos;
+
+    public HarnessEvent(long sequence) {
+        this.sequence = sequence;
+        this.createdNanos = System.nanoTime();
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getCreatedNanos() {
+        return createdNanos;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+
+}
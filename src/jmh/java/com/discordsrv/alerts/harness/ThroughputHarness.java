@@ -0,0 +1,122 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.harness;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.AlertsBootstrap;
+import com.discordsrv.alerts.listener.AlertListener;
+
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Boots the plugin against the stub server, fires synthetic events at a fixed rate through
+ * {@link AlertListener#runAlertsForEvent(Object)} and delivers them to a {@link FakeWebhookServer}.
+ * Reports the sustained throughput, end-to-end latency percentiles and how many alerts never arrived.
+ *
+ * <p>Options (as --name=value): rate (events per second), duration (seconds), alerts (alerts per event),
+ * latency (webhook response time in ms), rateLimit (fraction of requests answered with 429),
+ * retryAfter (ms to wait after a 429) and drain (seconds to wait for outstanding deliveries)</p>
+ */
+public class ThroughputHarness {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        int rate = Integer.parseInt(options.getOrDefault("rate", "1000"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int alerts = Integer.parseInt(options.getOrDefault("alerts", "1"));
+        long latency = Long.parseLong(options.getOrDefault("latency", "50"));
+        double rateLimit = Double.parseDouble(options.getOrDefault("rateLimit", "0.01"));
+        long retryAfter = Long.parseLong(options.getOrDefault("retryAfter", "100"));
+        int drain = Integer.parseInt(options.getOrDefault("drain", "30"));
+
+        FakeWebhookServer webhookServer = new FakeWebhookServer(latency, rateLimit, retryAfter);
+        webhookServer.start();
+
+        StringBuilder config = new StringBuilder("Metrics:\n  Jmx: false\nAlerts:\n");
+        for (int i = 0; i < alerts; i++) {
+            config.append("  - Trigger: HarnessEvent\n")
+                    .append("    Name: harness-").append(i).append('\n')
+                    .append("    Target: \"").append(webhookServer.getWebhookUrl()).append("\"\n")
+                    .append("    Content: \"").append(i).append(":${sequence}:${createdNanos}\"\n");
+        }
+        Alerts plugin = AlertsBootstrap.enable(Files.createTempDirectory("alerts-harness").toFile(), config.toString());
+        AlertListener listener = plugin.getListener();
+
+        System.out.printf(Locale.ROOT, "Firing %d events/s for %ds at %d alert(s), webhook latency %dms, %.1f%% rate limited%n",
+                rate, duration, alerts, latency, rateLimit * 100);
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = (long) rate * duration;
+        long start = System.nanoTime();
+        long fired = 0;
+        long maxBehindNanos = 0;
+        while (fired < total) {
+            long due = start + fired * intervalNanos;
+            long now = System.nanoTime();
+            if (now < due) {
+                LockSupport.parkNanos(due - now);
+                continue;
+            }
+            maxBehindNanos = Math.max(maxBehindNanos, now - due);
+            listener.runAlertsForEvent(new HarnessEvent(fired++));
+        }
+        long firingNanos = System.nanoTime() - start;
+
+        long expected = total * alerts;
+        long drainUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(drain);
+        while (webhookServer.getDelivered() < expected && System.nanoTime() < drainUntil) {
+            Thread.sleep(100);
+        }
+        plugin.onDisable();
+        webhookServer.stop();
+
+        long delivered = webhookServer.getDelivered();
+        long deliveryNanos = Math.max(1, webhookServer.getLastDeliveryNanos() - start);
+        long[] latencies = webhookServer.getSortedLatencies();
+
+        System.out.println();
+        System.out.printf(Locale.ROOT, "Offered:     %.1f events/s (%d events, generator fell behind by at most %.2fms)%n",
+                total / (firingNanos / 1e9), total, maxBehindNanos / 1e6);
+        System.out.printf(Locale.ROOT, "Delivered:   %d/%d alerts, %.1f alerts/s sustained%n",
+                delivered, expected, delivered / (deliveryNanos / 1e9));
+        System.out.printf(Locale.ROOT, "Dropped:     %d alerts%n", expected - delivered);
+        System.out.printf(Locale.ROOT, "Requests:    %d (%d rate limited, %d duplicates, %d malformed)%n",
+                webhookServer.getRequests(), webhookServer.getRateLimited(), webhookServer.getDuplicates(), webhookServer.getMalformed());
+        System.out.printf(Locale.ROOT, "Latency:     p50 %.2fms, p90 %.2fms, p99 %.2fms, p99.9 %.2fms, max %.2fms%n",
+                percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+                percentile(latencies, 99.9), latencies.length > 0 ? latencies[latencies.length - 1] / 1e6 : 0);
+        System.exit(0);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(sorted.length * percentile / 100D) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+}
@@ -18,25 +18,53 @@
 
 package com.discordsrv.alerts;
 
+import com.discordsrv.alerts.aggregate.AlertAggregator;
+import com.discordsrv.alerts.config.ConfigReloader;
+import com.discordsrv.alerts.debug.TraceBuffer;
+import com.discordsrv.alerts.delivery.DeliveryService;
 import com.discordsrv.alerts.hook.DiscordSRVHook;
 import com.discordsrv.alerts.listener.AlertListener;
+import com.discordsrv.alerts.manager.CommandManager;
+import com.discordsrv.alerts.metrics.MetricsRegistry;
+import com.discordsrv.alerts.metrics.PrometheusExporter;
+import com.discordsrv.alerts.metrics.SlowAlertReporter;
 import com.discordsrv.alerts.provider.AvatarProvider;
 import com.discordsrv.alerts.provider.PlayerProvider;
 import com.discordsrv.alerts.provider.TimeProvider;
+import com.discordsrv.alerts.rate.RateCounters;
+import com.discordsrv.alerts.util.DurationUtil;
+import com.discordsrv.alerts.util.SpELExpressionBuilder;
+import com.discordsrv.alerts.util.VirtualThreads;
 import github.scarsz.configuralize.DynamicConfig;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.bukkit.Bukkit;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public final class Alerts extends JavaPlugin {
 
-    private DynamicConfig config;
+    private volatile DynamicConfig config;
+    private ConfigReloader configReloader;
 
     private AlertListener listener;
+    private AlertAggregator aggregator;
+    private RateCounters rateCounters;
+    private DeliveryService deliveryService;
+    private final Executor schedulerExecutor = task -> Bukkit.getScheduler().runTaskAsynchronously(this, task);
+    private ExecutorService virtualExecutor;
+    private MetricsRegistry metrics;
+    private PrometheusExporter prometheusExporter;
+    private SlowAlertReporter slowAlertReporter;
 
     private AvatarProvider avatarProvider;
     private PlayerProvider playerProvider;
@@ -44,7 +72,21 @@ public final class Alerts extends JavaPlugin {
 
     private DiscordSRVHook discordSRVHook;
 
-    private boolean debug = false;
+    private volatile boolean debug = false;
+    private volatile boolean profiling = false;
+    private volatile long syncBudgetNanos;
+    private volatile TraceBuffer traceBuffer;
+
+    public Alerts() {
+        super();
+    }
+
+    /**
+     * Used to run the plugin outside of a server, for benchmarks and the throughput harness
+     */
+    Alerts(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+    }
 
     public static Alerts getPlugin() {
         return getPlugin(Alerts.class);
@@ -54,10 +96,10 @@ public final class Alerts extends JavaPlugin {
     public void onEnable() {
         if (Bukkit.getPluginManager().getPlugin("DiscordSRV") != null) {
             discordSRVHook = new DiscordSRVHook(this);
+            discordSRVHook.register();
         }
 
-        config = new DynamicConfig();
-        config.addSource(Alerts.class, "config", new File(getDataFolder(), "config.yml"));
+        config = createConfig();
 
         try {
             config.saveAllDefaults();
@@ -74,22 +116,102 @@ public final class Alerts extends JavaPlugin {
             return;
         }
 
+        applyRuntimeSettings(config);
+
+        metrics = new MetricsRegistry(this);
+        if (config.getOptionalBoolean("Metrics.Jmx").orElse(true)) {
+            metrics.registerJmx();
+        }
+        if (config.getOptionalBoolean("Metrics.PrometheusFile").orElse(false)) {
+            long interval = DurationUtil.parseMillis(config.getOptionalString("Metrics.PrometheusInterval").orElse(null), TimeUnit.SECONDS.toMillis(15));
+            prometheusExporter = new PrometheusExporter(this, metrics, new File(getDataFolder(), "metrics.prom"));
+            prometheusExporter.start(Math.max(1, interval / 50));
+        }
+        // nothing is reported while profiling is disabled, it can be enabled with a reload
+        long slowThreshold = DurationUtil.parseMillis(config.getOptionalString("Profiler.SlowThreshold").orElse(null), 5);
+        long reportInterval = DurationUtil.parseMillis(config.getOptionalString("Profiler.ReportInterval").orElse(null), TimeUnit.MINUTES.toMillis(1));
+        slowAlertReporter = new SlowAlertReporter(this, metrics, slowThreshold, reportInterval);
+        slowAlertReporter.start();
+
+        deliveryService = new DeliveryService(this);
+        deliveryService.start();
+
+        aggregator = new AlertAggregator(this);
+        aggregator.start();
+        metrics.registerGauge("aggregate_buckets", aggregator::getBucketCount);
+
+        rateCounters.start();
+        metrics.registerGauge("rate_counters", rateCounters::getSize);
+
+        String executor = config.getOptionalString("Executor").orElse("bukkit").trim().toLowerCase(Locale.ROOT);
+        if (executor.equals("virtual")) {
+            if (VirtualThreads.isSupported()) {
+                virtualExecutor = VirtualThreads.newExecutor("Alerts processing");
+                debug("Processing async alerts on virtual threads");
+            } else {
+                info("Virtual threads require Java 21 or newer, processing async alerts on the Bukkit scheduler instead");
+            }
+        } else if (!executor.equals("bukkit")) {
+            error("Invalid Executor \"" + executor + "\", expected bukkit or virtual. Using bukkit");
+        }
+
         listener = new AlertListener(this);
         listener.reloadAlerts();
 
+        configReloader = new ConfigReloader(this, new File(getDataFolder(), "config.yml"));
+        if (config.getOptionalBoolean("AutoReload").orElse(true)) {
+            configReloader.watch();
+        }
+
         this.avatarProvider = new AvatarProvider(this);
         this.playerProvider = new PlayerProvider(this);
         this.timeProvider = new TimeProvider(this);
 
-        if (getServer().getPluginManager().getPlugin("DiscordSRV") != null) {
-            discordSRVHook = new DiscordSRVHook(this);
+        PluginCommand command = getCommand("alerts");
+        if (command != null) {
+            CommandManager commandManager = new CommandManager(this);
+            command.setExecutor(commandManager);
+            command.setTabCompleter(commandManager);
         }
     }
 
     @Override
     public void onDisable() {
+        if (configReloader != null) {
+            configReloader.stop();
+        }
         if (listener != null) {
             listener.unregister();
+            listener.getSyncQueue().stop();
+        }
+        if (virtualExecutor != null) {
+            // let alerts that are still being processed reach the delivery service before it stops
+            virtualExecutor.shutdown();
+            try {
+                if (!virtualExecutor.awaitTermination(5, TimeUnit.SECONDS)) virtualExecutor.shutdownNow();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            virtualExecutor = null;
+        }
+        if (aggregator != null) {
+            aggregator.stop();
+        }
+        if (rateCounters != null) {
+            rateCounters.stop();
+        }
+        if (deliveryService != null) {
+            deliveryService.stop();
+        }
+        if (slowAlertReporter != null) {
+            slowAlertReporter.stop();
+        }
+        if (prometheusExporter != null) {
+            prometheusExporter.stop();
+            prometheusExporter.write();
+        }
+        if (metrics != null) {
+            metrics.unregisterJmx();
         }
     }
 
@@ -97,10 +219,86 @@ public final class Alerts extends JavaPlugin {
         return config;
     }
 
+    /**
+     * @return a new, unloaded, configuration backed by the plugin's config.yml
+     */
+    public DynamicConfig createConfig() {
+        DynamicConfig config = new DynamicConfig();
+        config.addSource(Alerts.class, "config", new File(getDataFolder(), "config.yml"));
+        return config;
+    }
+
+    public void setConfig(DynamicConfig config) {
+        this.config = config;
+        applyRuntimeSettings(config);
+    }
+
+    /**
+     * Apply the settings that are re-read on every reload: debug logging, profiling, the sync tick budget,
+     * expression settings, rate counters and the trace buffer
+     */
+    private void applyRuntimeSettings(DynamicConfig config) {
+        debug = config.getOptionalBoolean("Debug").orElse(false);
+        profiling = config.getOptionalBoolean("Profiler.Enabled").orElse(false);
+        syncBudgetNanos = TimeUnit.MILLISECONDS.toNanos(DurationUtil.parseMillis(config.getOptionalString("Sync.TickBudget").orElse(null), 1));
+        SpELExpressionBuilder.configure(
+                config.getOptionalBoolean("Expressions.Restricted").orElse(false),
+                TimeUnit.MILLISECONDS.toNanos(DurationUtil.parseMillis(config.getOptionalString("Expressions.Budget").orElse(null), 0)),
+                config.getOptionalInt("Expressions.MaxOverBudget").orElse(10)
+        );
+        // one bucket per second for every key, capped to keep the memory used per key small
+        int rateWindow = (int) Math.min(600, Math.max(1, TimeUnit.MILLISECONDS.toSeconds(
+                DurationUtil.parseMillis(config.getOptionalString("Rate.Window").orElse(null), TimeUnit.MINUTES.toMillis(1)))));
+        int rateMaxKeys = config.getOptionalInt("Rate.MaxKeys").orElse(10000);
+        if (rateCounters == null) {
+            rateCounters = new RateCounters(this, rateWindow, rateMaxKeys);
+        } else {
+            rateCounters.configure(rateWindow, rateMaxKeys);
+        }
+        if (config.getOptionalBoolean("Trace.Enabled").orElse(false)) {
+            int size = Math.max(16, config.getOptionalInt("Trace.Size").orElse(8192));
+            TraceBuffer traceBuffer = this.traceBuffer;
+            // keep what's been traced so far unless the size changed
+            if (traceBuffer == null || traceBuffer.getCapacity() != TraceBuffer.capacityFor(size)) {
+                this.traceBuffer = new TraceBuffer(size);
+            }
+        } else {
+            traceBuffer = null;
+        }
+    }
+
+    public ConfigReloader getConfigReloader() {
+        return configReloader;
+    }
+
     public AlertListener getListener() {
         return listener;
     }
 
+    public AlertAggregator getAggregator() {
+        return aggregator;
+    }
+
+    public RateCounters getRateCounters() {
+        return rateCounters;
+    }
+
+    public DeliveryService getDeliveryService() {
+        return deliveryService;
+    }
+
+    /**
+     * @return the executor for async alerts, virtual threads if enabled & supported, otherwise the Bukkit scheduler
+     */
+    public Executor getAlertExecutor() {
+        ExecutorService virtualExecutor = this.virtualExecutor;
+        return virtualExecutor != null ? virtualExecutor : schedulerExecutor;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
     public AvatarProvider getAvatarProvider() {
         return avatarProvider;
     }
@@ -121,6 +319,10 @@ public final class Alerts extends JavaPlugin {
         getLogger().info(message);
     }
 
+    public void warning(String message) {
+        getLogger().warning(message);
+    }
+
     public void error(String message) {
         getLogger().severe(message);
     }
@@ -137,10 +339,38 @@ public final class Alerts extends JavaPlugin {
         error(throwable);
     }
 
+    /**
+     * @return true if debug logging is enabled, check this before building expensive debug messages
+     */
+    public boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * @return true if the time alerts spend in each stage should be recorded, see {@link com.discordsrv.alerts.metrics.AlertProfile}
+     */
+    public boolean isProfiling() {
+        return profiling;
+    }
+
+    /**
+     * @return how long sync alerts may take per tick before the rest is carried over to the next tick, 0 for no limit
+     */
+    public long getSyncBudgetNanos() {
+        return syncBudgetNanos;
+    }
+
     public void debug(String message) {
-        //if (config.getBoolean("Debug")) {
+        if (debug) {
             getLogger().info("[DEBUG] " + message);
-        //}
+        }
+    }
+
+    /**
+     * @return the trace buffer, null if tracing is disabled
+     */
+    public TraceBuffer getTraceBuffer() {
+        return traceBuffer;
     }
 
     public boolean isDiscordSRVHookEnabled() {
@@ -0,0 +1,142 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.aggregate;
+
+import com.discordsrv.alerts.util.DurationUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Occurrences of a single aggregated alert for one group key within one window.
+ * Only the count, the first & last values and a fixed size sample of values are kept.
+ */
+public class AggregateBucket {
+
+    private final String key;
+    private final long windowMillis;
+    private final long windowStart;
+    private final String[] samples;
+
+    private long count = 0;
+    private String first;
+    private String last;
+    private long firstTime;
+    private long lastTime;
+    private Consumer<AggregateBucket> summarizer;
+
+    public AggregateBucket(String key, long windowMillis, int sampleSize) {
+        this.key = key;
+        this.windowMillis = windowMillis;
+        this.windowStart = System.currentTimeMillis();
+        this.samples = new String[Math.max(0, sampleSize)];
+    }
+
+    synchronized void add(String value, Consumer<AggregateBucket> summarizer) {
+        long now = System.currentTimeMillis();
+        if (count == 0) {
+            first = value;
+            firstTime = now;
+        }
+        last = value;
+        lastTime = now;
+
+        // reservoir sampling, every value has the same chance of ending up in the sample
+        if (count < samples.length) {
+            samples[(int) count] = value;
+        } else if (samples.length > 0) {
+            long index = ThreadLocalRandom.current().nextLong(count + 1);
+            if (index < samples.length) samples[(int) index] = value;
+        }
+
+        count++;
+        // the most recent occurrence renders the summary
+        this.summarizer = summarizer;
+    }
+
+    boolean isExpired(long now) {
+        return now - windowStart >= windowMillis;
+    }
+
+    Consumer<AggregateBucket> getSummarizer() {
+        return summarizer;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized String getFirst() {
+        return first;
+    }
+
+    public synchronized String getLast() {
+        return last;
+    }
+
+    public synchronized long getFirstTime() {
+        return firstTime;
+    }
+
+    public synchronized long getLastTime() {
+        return lastTime;
+    }
+
+    public synchronized List<String> getSamples() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, samples.length); i++) {
+            values.add(samples[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Resolve the summary placeholders for this bucket
+     *
+     * @param placeholder the placeholder key, without braces
+     * @return the value, or null if the key isn't a summary placeholder
+     */
+    public Object getPlaceholder(String placeholder) {
+        switch (placeholder) {
+            case "count":
+                return getCount();
+            case "window":
+                return DurationUtil.format(windowMillis);
+            case "key":
+                return key;
+            case "first":
+                return getFirst();
+            case "last":
+                return getLast();
+            case "samples":
+                return String.join(", ", getSamples());
+            case "duration":
+                return DurationUtil.format(getLastTime() - getFirstTime());
+            default:
+                return null;
+        }
+    }
+
+}
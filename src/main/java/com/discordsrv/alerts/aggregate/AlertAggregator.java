@@ -0,0 +1,108 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.aggregate;
+
+import com.discordsrv.alerts.Alerts;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Folds repeated occurrences of aggregated alerts into in-memory buckets and sends one summary per bucket
+ * once its window closes.
+ */
+public class AlertAggregator {
+
+    private final Alerts plugin;
+    private final Map<String, AggregateBucket> buckets = new ConcurrentHashMap<>();
+    private BukkitTask task;
+
+    public AlertAggregator(Alerts plugin) {
+        this.plugin = plugin;
+    }
+
+    public void start() {
+        if (task != null) return;
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::flushExpired, 20L, 20L);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        flushAll();
+    }
+
+    /**
+     * Record an occurrence of an aggregated alert
+     *
+     * @param bucketKey the unique key of the bucket (alert, destination & group key)
+     * @param groupKey the group key as shown in the summary
+     * @param windowMillis the length of the window
+     * @param sampleSize the amount of values to keep as a sample
+     * @param value the value for this occurrence
+     * @param summarizer renders & delivers the summary when the window closes
+     */
+    public void record(String bucketKey, String groupKey, long windowMillis, int sampleSize, String value, Consumer<AggregateBucket> summarizer) {
+        buckets.compute(bucketKey, (k, bucket) -> {
+            if (bucket == null) bucket = new AggregateBucket(groupKey, windowMillis, sampleSize);
+            bucket.add(value, summarizer);
+            return bucket;
+        });
+    }
+
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    public void flushExpired() {
+        flush(false);
+    }
+
+    public void flushAll() {
+        flush(true);
+    }
+
+    private void flush(boolean all) {
+        long now = System.currentTimeMillis();
+        List<AggregateBucket> closed = new ArrayList<>();
+        for (String key : buckets.keySet()) {
+            buckets.computeIfPresent(key, (k, bucket) -> {
+                if (!all && !bucket.isExpired(now)) return bucket;
+                closed.add(bucket);
+                return null;
+            });
+        }
+
+        for (AggregateBucket bucket : closed) {
+            try {
+                bucket.getSummarizer().accept(bucket);
+            } catch (Throwable t) {
+                plugin.error("Failed to send aggregated alert summary for \"" + bucket.getKey() + "\"", t);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,470 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.alert;
+
+import alexh.weak.Dynamic;
+import alexh.weak.Weak;
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.condition.Condition;
+import com.discordsrv.alerts.delivery.Destination;
+import com.discordsrv.alerts.delivery.sink.SinkManager;
+import com.discordsrv.alerts.metrics.AlertMetrics;
+import com.discordsrv.alerts.rate.RateThreshold;
+import com.discordsrv.alerts.util.*;
+import github.scarsz.configuralize.DynamicConfig;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.expression.ParseException;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * An alert from the configuration, compiled once when alerts are (re)loaded.
+ * Instances are immutable (apart from the lazily resolved destinations, the {@link ExpressionBudget} and the
+ * {@link RateThreshold} state) and can be shared between threads.
+ */
+public final class Alert {
+
+    private static final Pattern VALID_CLASS_NAME_PATTERN = Pattern.compile("([\\p{L}_$][\\p{L}\\p{N}_$]*\\.)*[\\p{L}_$][\\p{L}\\p{N}_$]*");
+    private static final List<String> SYNC_EVENT_NAMES = Arrays.asList(
+            // Needs to be sync because block data will be stale by time async task runs
+            "BlockBreakEvent"
+    );
+
+    private final int index;
+    private final String name;
+    private final AlertMetrics metrics;
+    private final Compiled compiled;
+    private final ExpressionBudget expressionBudget;
+
+    private Alert(Alerts plugin, int index, Compiled compiled) {
+        this.index = index;
+        this.name = compiled.name != null ? compiled.name : "alert-" + (index + 1);
+        this.metrics = plugin.getMetrics().alert(name);
+        this.compiled = compiled;
+        this.expressionBudget = new ExpressionBudget(plugin, name);
+    }
+
+    /**
+     * Compile the alert at the given index of the given configuration
+     *
+     * @param plugin the plugin
+     * @param config the configuration the alert is from
+     * @param source the alert's configuration
+     * @param index the index of the alert in the Alerts list
+     * @param errors receives problems with the alert that don't prevent it from being used
+     * @return the compiled alert
+     */
+    public static Alert compile(Alerts plugin, DynamicConfig config, Map<?, ?> source, int index, List<String> errors) {
+        return new Alert(plugin, index, new Compiled(config, source, index, errors));
+    }
+
+    /**
+     * @return an alert sharing all compiled state with this alert, for an unchanged alert that moved to another index
+     */
+    public Alert withIndex(Alerts plugin, int index) {
+        return index == this.index ? this : new Alert(plugin, index, compiled);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public AlertMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the time budget of this alert's expressions, the alert shouldn't be processed while it's disabled
+     */
+    public ExpressionBudget getExpressionBudget() {
+        return expressionBudget;
+    }
+
+    /**
+     * @return the (deep copied) configuration this alert was compiled from, used to detect unchanged alerts
+     */
+    public Map<?, ?> getSource() {
+        return compiled.source;
+    }
+
+    public Dynamic getDynamic() {
+        return compiled.dynamic;
+    }
+
+    public Set<String> getTriggers() {
+        return compiled.triggers;
+    }
+
+    public boolean isAsync() {
+        return compiled.async;
+    }
+
+    /**
+     * @return true if the alert may be carried over to a later tick when it's sync and the tick's budget is used up,
+     *         false if it's for an event whose data is stale by then
+     */
+    public boolean isDeferrable() {
+        return compiled.deferrable;
+    }
+
+    public boolean isIgnoreCancelled() {
+        return compiled.ignoreCancelled;
+    }
+
+    public Priority getPriority() {
+        return compiled.priority;
+    }
+
+    public Set<String> getTargets() {
+        return compiled.targets;
+    }
+
+    /**
+     * @return the message, null if the alert is disabled
+     */
+    public MessageFormat getMessageFormat() {
+        return compiled.messageFormat;
+    }
+
+    /**
+     * @return the message compiled for rendering, null if the alert is disabled
+     */
+    public MessageTemplate getMessageTemplate() {
+        return compiled.messageTemplate;
+    }
+
+    public List<Condition> getConditions() {
+        return compiled.conditions;
+    }
+
+    /**
+     * @return the aggregate settings, null if the alert isn't aggregated
+     */
+    public Aggregate getAggregate() {
+        return compiled.aggregate;
+    }
+
+    /**
+     * @return the digest settings, null if the alert doesn't keep a digest of its keys
+     */
+    public Digest getDigest() {
+        return compiled.digest;
+    }
+
+    /**
+     * @return the rate threshold, null if the alert fires for every match
+     */
+    public RateThreshold getRateThreshold() {
+        return compiled.rateThreshold;
+    }
+
+    /**
+     * @return every ${} expression used by this alert's templates & conditions
+     */
+    public Set<String> getExpressions() {
+        return compiled.expressions;
+    }
+
+    /**
+     * @return the resolved destinations, null if they haven't been resolved (or were invalidated)
+     */
+    public Set<Destination> getResolvedDestinations() {
+        return compiled.destinations.get();
+    }
+
+    public void setResolvedDestinations(Set<Destination> destinations) {
+        compiled.destinations.set(destinations != null ? Collections.unmodifiableSet(destinations) : null);
+    }
+
+    /**
+     * The index independent state of an alert, shared between snapshots as long as the alert's configuration doesn't change
+     */
+    private static final class Compiled {
+
+        private final Map<?, ?> source;
+        private final Dynamic dynamic;
+        private final String name;
+        private final Set<String> triggers;
+        private final boolean async;
+        private final boolean deferrable;
+        private final boolean ignoreCancelled;
+        private final Priority priority;
+        private final Set<String> targets;
+        private final MessageFormat messageFormat;
+        private final MessageTemplate messageTemplate;
+        private final List<Condition> conditions;
+        private final Aggregate aggregate;
+        private final RateThreshold rateThreshold;
+        private final Digest digest;
+        private final Set<String> expressions;
+        private final AtomicReference<Set<Destination>> destinations = new AtomicReference<>();
+
+        private Compiled(DynamicConfig config, Map<?, ?> source, int index, List<String> errors) {
+            this.source = source;
+            this.dynamic = Dynamic.from(source);
+
+            Dynamic nameDynamic = dynamic.get("Name");
+            this.name = nameDynamic.isPresent() ? nameDynamic.convert().intoString() : null;
+            String displayName = name != null ? name : "alert-" + (index + 1);
+
+            this.triggers = Collections.unmodifiableSet(compileTriggers(dynamic));
+
+            boolean async = true;
+            Dynamic asyncDynamic = dynamic.get("Async");
+            if (asyncDynamic.isPresent()) {
+                if (asyncDynamic.convert().intoString().equalsIgnoreCase("false")
+                        || asyncDynamic.convert().intoString().equalsIgnoreCase("no")) {
+                    async = false;
+                }
+            }
+            boolean deferrable = true;
+            for (String syncName : SYNC_EVENT_NAMES) {
+                if (triggers.contains(syncName.toLowerCase())) {
+                    async = false;
+                    deferrable = false;
+                    break;
+                }
+            }
+            this.async = async;
+            this.deferrable = deferrable;
+
+            Dynamic ignoreCancelledDynamic = dynamic.get("IgnoreCancelled");
+            this.ignoreCancelled = !ignoreCancelledDynamic.isPresent() || ignoreCancelledDynamic.as(Boolean.class);
+
+            Priority priority = Priority.NORMAL;
+            Dynamic priorityDynamic = dynamic.get("Priority");
+            if (priorityDynamic.isPresent()) {
+                String priorityName = priorityDynamic.convert().intoString();
+                priority = Priority.parse(priorityName);
+                if (priority == null) {
+                    errors.add("Invalid priority \"" + priorityName + "\" for alert \"" + displayName + "\", expected high, normal or low. Using normal");
+                    priority = Priority.NORMAL;
+                }
+            }
+            this.priority = priority;
+
+            Set<String> targets = new LinkedHashSet<>();
+            Dynamic targetsDynamic = dynamic.get("Target");
+            if (targetsDynamic.isList()) {
+                targetsDynamic.children()
+                        .map(Weak::asString)
+                        .filter(Objects::nonNull)
+                        .forEach(targets::add);
+            } else if (targetsDynamic.isString()) {
+                targets.add(targetsDynamic.asString());
+            }
+            for (Iterator<String> iterator = targets.iterator(); iterator.hasNext(); ) {
+                String target = iterator.next();
+                String error = SinkManager.validate(target);
+                if (error != null) {
+                    errors.add("Invalid target \"" + target + "\" for alert \"" + displayName + "\" -> " + error);
+                    iterator.remove();
+                }
+            }
+            this.targets = Collections.unmodifiableSet(targets);
+
+            this.messageFormat = MessageFormatUtil.getMessageFromConfiguration(config, "Alerts." + index);
+            this.messageTemplate = messageFormat != null ? new MessageTemplate(messageFormat) : null;
+
+            Set<String> expressions = new HashSet<>();
+            if (messageFormat != null) {
+                // translate() visits every template of the message, use it to find the expressions in them
+                MessageFormatUtil.translate(messageFormat, (content, needsEscape) -> {
+                    NamedValueFormatter.collectExpressions(content, expressions);
+                    return content;
+                });
+            }
+
+            List<Condition> conditions = new ArrayList<>();
+            Dynamic conditionsDynamic = dynamic.dget("Conditions");
+            if (conditionsDynamic.isPresent()) {
+                Iterator<Dynamic> iterator = conditionsDynamic.children().iterator();
+                while (iterator.hasNext()) {
+                    String expression = iterator.next().convert().intoString();
+                    try {
+                        conditions.add(Condition.parse(expression));
+                        expressions.add(expression);
+                    } catch (ParseException e) {
+                        errors.add("Error while parsing expression \"" + expression + "\" for alert \"" + displayName + "\" -> " + e.getMessage());
+                    }
+                }
+            }
+            this.conditions = Collections.unmodifiableList(conditions);
+
+            Dynamic aggregateDynamic = dynamic.get("Aggregate");
+            if (aggregateDynamic.isPresent()) {
+                this.aggregate = new Aggregate(aggregateDynamic);
+                NamedValueFormatter.collectExpressions(aggregate.getKey(), expressions);
+                NamedValueFormatter.collectExpressions(aggregate.getValue(), expressions);
+            } else {
+                this.aggregate = null;
+            }
+
+            RateThreshold rateThreshold = null;
+            Dynamic rateDynamic = dynamic.get("Rate");
+            if (rateDynamic.isPresent()) {
+                Dynamic countDynamic = rateDynamic.get("Count");
+                long count = countDynamic.isPresent() ? NumberUtils.toLong(countDynamic.convert().intoString(), -1) : -1;
+                if (count < 1) {
+                    errors.add("Invalid or missing Rate Count for alert \"" + displayName + "\", expected a positive number. Firing for every match");
+                } else {
+                    Dynamic windowDynamic = rateDynamic.get("Window");
+                    Dynamic keyDynamic = rateDynamic.get("Key");
+                    Dynamic maxKeysDynamic = rateDynamic.get("MaxKeys");
+                    String key = keyDynamic.isPresent() ? keyDynamic.convert().intoString() : null;
+                    rateThreshold = new RateThreshold(
+                            count,
+                            DurationUtil.parseMillis(windowDynamic.isPresent() ? windowDynamic.convert().intoString() : null, TimeUnit.MINUTES.toMillis(1)),
+                            key,
+                            maxKeysDynamic.isPresent() ? maxKeysDynamic.convert().intoInteger() : 10000
+                    );
+                    NamedValueFormatter.collectExpressions(key, expressions);
+                }
+            }
+            this.rateThreshold = rateThreshold;
+
+            Dynamic digestDynamic = dynamic.get("Digest");
+            if (digestDynamic.isPresent()) {
+                this.digest = new Digest(digestDynamic, aggregate);
+                NamedValueFormatter.collectExpressions(digest.getKey(), expressions);
+            } else {
+                this.digest = null;
+            }
+            this.expressions = Collections.unmodifiableSet(expressions);
+        }
+
+        private static Set<String> compileTriggers(Dynamic alert) {
+            Set<String> triggers = new HashSet<>();
+            Dynamic triggerDynamic = alert.get("Trigger");
+            if (triggerDynamic.isList()) {
+                triggers.addAll(triggerDynamic.children()
+                        .map(Weak::asString)
+                        .map(String::toLowerCase)
+                        .collect(Collectors.toSet())
+                );
+            } else if (triggerDynamic.isString()) {
+                triggers.add(triggerDynamic.asString().toLowerCase());
+            }
+
+            Set<String> finalTriggers = new HashSet<>();
+            for (String trigger : triggers) {
+                if (!trigger.startsWith("/")) {
+                    // event trigger, make sure it's a valid class name
+                    Matcher matcher = VALID_CLASS_NAME_PATTERN.matcher(trigger);
+                    if (matcher.find()) {
+                        // valid class name found
+                        finalTriggers.add(matcher.group());
+                    }
+                    continue;
+                }
+                finalTriggers.add(trigger);
+            }
+            return finalTriggers;
+        }
+
+    }
+
+    /**
+     * The Aggregate section of an alert
+     */
+    public static final class Aggregate {
+
+        private final String key;
+        private final String value;
+        private final long windowMillis;
+        private final int samples;
+
+        private Aggregate(Dynamic aggregateDynamic) {
+            Dynamic keyDynamic = aggregateDynamic.get("Key");
+            Dynamic valueDynamic = aggregateDynamic.get("Value");
+            Dynamic samplesDynamic = aggregateDynamic.get("Samples");
+            this.key = keyDynamic.isPresent() ? keyDynamic.convert().intoString() : null;
+            this.value = valueDynamic.isPresent() ? valueDynamic.convert().intoString() : null;
+            this.windowMillis = DurationUtil.parseMillis(aggregateDynamic.get("Window").isPresent()
+                    ? aggregateDynamic.get("Window").convert().intoString() : null, TimeUnit.SECONDS.toMillis(30));
+            this.samples = samplesDynamic.isPresent() ? samplesDynamic.convert().intoInteger() : 5;
+        }
+
+        /**
+         * @return the group key template, null if occurrences aren't grouped
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the value template, null if no values are sampled
+         */
+        public String getValue() {
+            return value;
+        }
+
+        public long getWindowMillis() {
+            return windowMillis;
+        }
+
+        public int getSamples() {
+            return samples;
+        }
+
+    }
+
+    /**
+     * The Digest section of an alert
+     */
+    public static final class Digest {
+
+        private final String key;
+        private final int topK;
+
+        private Digest(Dynamic digestDynamic, Aggregate aggregate) {
+            Dynamic keyDynamic = digestDynamic.get("Key");
+            Dynamic topKDynamic = digestDynamic.get("TopK");
+            if (keyDynamic.isPresent()) {
+                this.key = keyDynamic.convert().intoString();
+            } else {
+                this.key = aggregate != null && aggregate.getKey() != null ? aggregate.getKey() : "{username}";
+            }
+            // the sketch keeps a few times this many counters, keep it reasonably small
+            this.topK = Math.max(1, Math.min(100, topKDynamic.isPresent() ? topKDynamic.convert().intoInteger() : 10));
+        }
+
+        /**
+         * @return the key template, defaults to the Aggregate Key or the player's name
+         */
+        public String getKey() {
+            return key;
+        }
+
+        public int getTopK() {
+            return topK;
+        }
+
+    }
+
+}
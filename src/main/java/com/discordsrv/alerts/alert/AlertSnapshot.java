@@ -0,0 +1,193 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.alert;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.util.SpELExpressionBuilder;
+import github.scarsz.configuralize.DynamicConfig;
+import org.springframework.expression.ParseException;
+
+import java.util.*;
+
+/**
+ * An immutable view of all loaded alerts. The listener swaps the whole snapshot when alerts are reloaded, so an event
+ * being processed always sees one consistent set of alerts.
+ */
+public final class AlertSnapshot {
+
+    public static final AlertSnapshot EMPTY = new AlertSnapshot(Collections.emptyList(), 0, Collections.emptyList());
+
+    private final List<Alert> alerts;
+    private final Set<String> activeTriggers;
+    private final TriggerIndex triggerIndex;
+    private final Set<String> expressions;
+    private final int reused;
+    private final List<String> errors;
+
+    private AlertSnapshot(List<Alert> alerts, int reused, List<String> errors) {
+        this.alerts = Collections.unmodifiableList(alerts);
+        this.errors = Collections.unmodifiableList(errors);
+        Set<String> activeTriggers = new HashSet<>();
+        Set<String> expressions = new HashSet<>();
+        for (Alert alert : alerts) {
+            activeTriggers.addAll(alert.getTriggers());
+            expressions.addAll(alert.getExpressions());
+        }
+        this.activeTriggers = Collections.unmodifiableSet(activeTriggers);
+        this.triggerIndex = new TriggerIndex(alerts);
+        this.expressions = Collections.unmodifiableSet(expressions);
+        this.reused = reused;
+    }
+
+    /**
+     * Compile the given alert configurations into a new snapshot.
+     * Alerts whose configuration is unchanged since the previous snapshot keep their compiled state
+     * (parsed conditions, message, resolved destinations) instead of being compiled again.
+     *
+     * An alert that fails to compile is left out and reported in {@link #getErrors()}, the other alerts are unaffected.
+     *
+     * @param plugin the plugin
+     * @param config the configuration the alerts are from
+     * @param sources the alert configurations, in order
+     * @param previous the snapshot being replaced
+     * @return the new snapshot
+     */
+    public static AlertSnapshot compile(Alerts plugin, DynamicConfig config, List<Map<?, ?>> sources, AlertSnapshot previous) {
+        Map<Map<?, ?>, Alert> unchanged = new HashMap<>();
+        for (Alert alert : previous.alerts) unchanged.putIfAbsent(alert.getSource(), alert);
+
+        List<Alert> alerts = new ArrayList<>(sources.size());
+        List<String> errors = new ArrayList<>();
+        int reused = 0;
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < sources.size(); i++) {
+            Map<?, ?> source = copy(sources.get(i));
+            // metrics are kept by name, two alerts with the same name would share them
+            Object configuredName = source.get("Name");
+            String name = configuredName != null ? configuredName.toString() : "alert-" + (i + 1);
+            if (!names.add(name.toLowerCase(Locale.ROOT))) {
+                errors.add("Alert #" + (i + 1) + " has the same name as another alert (" + name + ") and was skipped, alert names must be unique");
+                continue;
+            }
+            Alert existing = unchanged.get(source);
+            if (existing != null) {
+                alerts.add(existing.withIndex(plugin, i));
+                reused++;
+                continue;
+            }
+            try {
+                alerts.add(Alert.compile(plugin, config, source, i, errors));
+            } catch (RuntimeException e) {
+                errors.add("Alert #" + (i + 1) + (configuredName != null ? " (" + configuredName + ")" : "") + " failed to load and was skipped -> " + e);
+            }
+        }
+        // checked for unchanged alerts as well, Expressions.Restricted may have been turned on since they were compiled
+        if (config.getOptionalBoolean("Expressions.Restricted").orElse(false)) {
+            for (Alert alert : alerts) checkRestricted(alert, errors);
+        }
+        return new AlertSnapshot(alerts, reused, errors);
+    }
+
+    private static void checkRestricted(Alert alert, List<String> errors) {
+        for (String expression : alert.getExpressions()) {
+            String violation;
+            try {
+                violation = SpELExpressionBuilder.findRestrictedViolation(SpELExpressionBuilder.parse(expression));
+            } catch (ParseException e) {
+                continue; // reported where the expression is used
+            }
+            if (violation != null) {
+                errors.add("Expression \"" + expression + "\" for alert \"" + alert.getName() + "\" uses \"" + violation
+                        + "\", which isn't available with Expressions.Restricted enabled");
+            }
+        }
+    }
+
+    /**
+     * Deep copy the given configuration, so later modifications of the config can't affect comparisons
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T object) {
+        if (object instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            ((Map<?, ?>) object).forEach((key, value) -> copy.put(key, copy(value)));
+            return (T) copy;
+        } else if (object instanceof List) {
+            List<Object> copy = new ArrayList<>();
+            for (Object value : (List<?>) object) copy.add(copy(value));
+            return (T) copy;
+        }
+        return object;
+    }
+
+    public List<Alert> getAlerts() {
+        return alerts;
+    }
+
+    public boolean isEmpty() {
+        return alerts.isEmpty();
+    }
+
+    /**
+     * @return the lower case triggers of all alerts
+     */
+    public Set<String> getActiveTriggers() {
+        return activeTriggers;
+    }
+
+    public TriggerIndex getTriggerIndex() {
+        return triggerIndex;
+    }
+
+    /**
+     * @return every expression used by the alerts in this snapshot
+     */
+    public Set<String> getExpressions() {
+        return expressions;
+    }
+
+    /**
+     * @return the amount of alerts that were carried over unchanged from the previous snapshot
+     */
+    public int getReused() {
+        return reused;
+    }
+
+    /**
+     * @return problems found while compiling this snapshot, one per line
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Enable alerts that were disabled for going over their expression time budget
+     */
+    public void resetExpressionBudgets() {
+        for (Alert alert : alerts) alert.getExpressionBudget().reset();
+    }
+
+    /**
+     * Forget all resolved destinations, for example because the Discord connection was re-established
+     */
+    public void invalidateDestinations() {
+        for (Alert alert : alerts) alert.setResolvedDestinations(null);
+    }
+
+}
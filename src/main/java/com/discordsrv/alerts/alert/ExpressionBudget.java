@@ -0,0 +1,92 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.alert;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.util.SpELExpressionBuilder;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps track of how often the expressions of an alert take longer than the time budget
+ * (see {@link SpELExpressionBuilder#configure(boolean, long, int)}), the alert is disabled once too many evaluations
+ * of one expression in a row were over budget. Evaluations are counted per expression, so a slow condition isn't
+ * hidden by the fast expressions evaluated in between. Disabled alerts are enabled again when alerts are reloaded.
+ */
+public class ExpressionBudget {
+
+    private final Alerts plugin;
+    private final String alertName;
+    private final Map<String, AtomicInteger> overBudget = new ConcurrentHashMap<>();
+    private final AtomicReference<String> disabledBy = new AtomicReference<>();
+
+    public ExpressionBudget(Alerts plugin, String alertName) {
+        this.plugin = plugin;
+        this.alertName = alertName;
+    }
+
+    /**
+     * Record an evaluation
+     *
+     * @param expression the expression that was evaluated
+     * @param nanos how long the evaluation took
+     */
+    public void record(String expression, long nanos) {
+        long budgetNanos = SpELExpressionBuilder.getBudgetNanos();
+        if (budgetNanos <= 0) return;
+        if (nanos <= budgetNanos) {
+            AtomicInteger count = overBudget.get(expression);
+            if (count != null && count.get() != 0) count.set(0);
+            return;
+        }
+
+        int count = overBudget.computeIfAbsent(expression, key -> new AtomicInteger()).incrementAndGet();
+        if (count >= SpELExpressionBuilder.getMaxOverBudget() && disabledBy.compareAndSet(null, expression)) {
+            plugin.warning(String.format(Locale.ROOT, "Disabled alert %s: expression \"%s\" took %.2fms, over the %.2fms budget"
+                            + " for %d evaluations in a row. It will be enabled again when alerts are reloaded",
+                    alertName, expression, nanos / (double) TimeUnit.MILLISECONDS.toNanos(1),
+                    budgetNanos / (double) TimeUnit.MILLISECONDS.toNanos(1), count));
+        }
+    }
+
+    /**
+     * @return true if the alert was disabled for going over the budget too often
+     */
+    public boolean isDisabled() {
+        return disabledBy.get() != null;
+    }
+
+    /**
+     * @return the expression that got the alert disabled, null if it isn't disabled
+     */
+    public String getDisabledBy() {
+        return disabledBy.get();
+    }
+
+    public void reset() {
+        overBudget.clear();
+        disabledBy.set(null);
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.alert;
+
+import java.util.Locale;
+
+/**
+ * How urgent an alert is. Sync processing and delivery keep a queue per priority and share their capacity between the
+ * priorities by weight, so high priority alerts go first without starving the others.
+ */
+public enum Priority {
+
+    HIGH(6),
+    NORMAL(3),
+    LOW(1);
+
+    private final int weight;
+
+    Priority(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * @return the share of the capacity this priority gets when every priority has work queued
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * @param name the priority name from the config, case insensitive
+     * @return the priority, null if there's no priority with the given name
+     */
+    public static Priority parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.alert;
+
+import com.discordsrv.alerts.util.CommandTokenizer;
+
+import java.util.*;
+
+/**
+ * Looks up the alerts for an event name or a command line with a single hash lookup, without allocating
+ */
+public final class TriggerIndex {
+
+    private final Map<String, List<Alert>> events;
+
+    // open addressing table keyed by the lower case command base, so lookups can hash a region of the command line
+    private final String[] commandKeys;
+    private final List<?>[] commandAlerts;
+    private final int mask;
+    private final boolean anyCommands;
+
+    TriggerIndex(List<Alert> alerts) {
+        Map<String, List<Alert>> events = new HashMap<>();
+        Map<String, List<Alert>> commands = new LinkedHashMap<>();
+        for (Alert alert : alerts) {
+            for (String trigger : alert.getTriggers()) {
+                if (trigger.startsWith("/")) {
+                    commands.computeIfAbsent(trigger.substring(1), key -> new ArrayList<>()).add(alert);
+                } else {
+                    events.computeIfAbsent(trigger, key -> new ArrayList<>()).add(alert);
+                }
+            }
+        }
+        events.replaceAll((key, list) -> Collections.unmodifiableList(list));
+        this.events = events;
+
+        int capacity = Integer.highestOneBit(Math.max(2, commands.size() * 2) - 1) << 1;
+        this.commandKeys = new String[capacity];
+        this.commandAlerts = new List<?>[capacity];
+        this.mask = capacity - 1;
+        this.anyCommands = !commands.isEmpty();
+        for (Map.Entry<String, List<Alert>> entry : commands.entrySet()) {
+            String key = entry.getKey();
+            int slot = hash(key, 0, key.length()) & mask;
+            while (commandKeys[slot] != null) slot = (slot + 1) & mask;
+            commandKeys[slot] = key;
+            commandAlerts[slot] = Collections.unmodifiableList(entry.getValue());
+        }
+    }
+
+    /**
+     * @param eventName the lower case event name
+     * @return the alerts triggered by the event, null if there are none
+     */
+    public List<Alert> getEventAlerts(String eventName) {
+        return events.get(eventName);
+    }
+
+    public boolean hasCommandTriggers() {
+        return anyCommands;
+    }
+
+    /**
+     * @param commandLine the command line, with or without slash & namespace
+     * @return the alerts triggered by the command, null if there are none
+     */
+    @SuppressWarnings("unchecked")
+    public List<Alert> getCommandAlerts(String commandLine) {
+        int start = CommandTokenizer.baseStart(commandLine);
+        int end = CommandTokenizer.baseEnd(commandLine, start);
+        int length = end - start;
+        int slot = hash(commandLine, start, end) & mask;
+        String key;
+        while ((key = commandKeys[slot]) != null) {
+            if (key.length() == length && key.regionMatches(true, 0, commandLine, start, length)) {
+                return (List<Alert>) commandAlerts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private static int hash(String string, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + Character.toLowerCase(string.charAt(i));
+        }
+        // spread the higher bits, the table is indexed by the lower ones
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.discordsrv.alerts.command;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.debug.TraceBuffer;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+public class CommandDebug {
+
+    @Command(commandNames = { "debug" },
+            helpMessage = "Shows the debug & trace settings, \"/alerts debug dump\" writes the trace buffer to a file",
+            permission = "alerts.debug")
+    public void execute(CommandSender sender, String[] args) {
+        Alerts plugin = Alerts.getPlugin();
+        TraceBuffer traceBuffer = plugin.getTraceBuffer();
+
+        if (args.length == 0 || !args[0].equalsIgnoreCase("dump")) {
+            sender.sendMessage(ChatColor.GRAY + "Debug logging: " + ChatColor.WHITE + (plugin.isDebug() ? "enabled" : "disabled"));
+            sender.sendMessage(ChatColor.GRAY + "Trace: " + ChatColor.WHITE + (traceBuffer != null
+                    ? traceBuffer.getRecorded() + " events recorded, keeping the last " + traceBuffer.getCapacity()
+                    : "disabled"));
+            return;
+        }
+
+        if (traceBuffer == null) {
+            sender.sendMessage(ChatColor.RED + "Tracing is disabled, enable it with Trace.Enabled in the config");
+            return;
+        }
+
+        File file = new File(plugin.getDataFolder(), "traces/trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".log");
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                int count = traceBuffer.dump(file);
+                sender.sendMessage(ChatColor.AQUA + "Wrote " + count + " trace events to " + file.getPath());
+            } catch (IOException e) {
+                sender.sendMessage(ChatColor.RED + "Failed to write the trace, check the console for details");
+                plugin.error("Failed to write the trace to " + file, e);
+            }
+        });
+    }
+}
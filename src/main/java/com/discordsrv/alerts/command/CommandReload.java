@@ -1,4 +1,16 @@
 package com.discordsrv.alerts.command;
 
+import com.discordsrv.alerts.Alerts;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
 public class CommandReload {
+
+    @Command(commandNames = { "reload" },
+            helpMessage = "Reloads the configuration and alerts",
+            permission = "alerts.reload")
+    public void execute(CommandSender sender, String[] args) {
+        sender.sendMessage(ChatColor.AQUA + "Reloading the configuration...");
+        Alerts.getPlugin().getConfigReloader().reload(sender);
+    }
 }
@@ -0,0 +1,97 @@
+package com.discordsrv.alerts.command;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.metrics.AlertMetrics;
+import com.discordsrv.alerts.metrics.AlertProfile;
+import com.discordsrv.alerts.metrics.KeyDigest;
+import com.discordsrv.alerts.metrics.LatencyHistogram;
+import com.discordsrv.alerts.metrics.MetricsRegistry;
+import com.discordsrv.alerts.metrics.TopKSketch;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import java.util.Locale;
+import java.util.Map;
+
+public class CommandStats {
+
+    @Command(commandNames = { "stats", "metrics" },
+            helpMessage = "Shows alert counters, delivery latency, queue depths and cache hit rates",
+            permission = "alerts.stats")
+    public void execute(CommandSender sender, String[] args) {
+        MetricsRegistry metrics = Alerts.getPlugin().getMetrics();
+
+        if (args.length > 0) {
+            String name = String.join(" ", args);
+            AlertMetrics alert = metrics.getAlerts().stream()
+                    .filter(a -> a.getName().equalsIgnoreCase(name))
+                    .findAny().orElse(null);
+            if (alert == null) {
+                sender.sendMessage(ChatColor.RED + "No metrics have been recorded for an alert named " + name);
+                return;
+            }
+            sender.sendMessage(ChatColor.AQUA + "Alert " + alert.getName() + ":");
+            sendCounters(sender, alert.getMatched(), alert.getRejected(), alert.getRendered(), alert.getDelivered(), alert.getFailed());
+            sendLatency(sender, alert.getDeliveryLatency());
+            sendProfile(sender, alert.getProfile());
+            sendDigest(sender, alert.getDigest());
+            return;
+        }
+
+        sender.sendMessage(ChatColor.AQUA + "All alerts:");
+        sendCounters(sender, metrics.getEventsMatched(), metrics.getConditionsRejected(), metrics.getRendered(), metrics.getDelivered(), metrics.getFailed());
+        sendLatency(sender, metrics.getDeliveryLatency());
+
+        for (AlertMetrics alert : metrics.getAlerts()) {
+            sender.sendMessage(ChatColor.GRAY + " " + alert.getName() + ": " + ChatColor.WHITE
+                    + alert.getMatched() + "/" + alert.getRejected() + "/" + alert.getRendered() + "/" + alert.getDelivered() + "/" + alert.getFailed()
+                    + ChatColor.DARK_GRAY + " (matched/rejected/rendered/delivered/failed)");
+        }
+        for (Map.Entry<String, Long> entry : metrics.getQueueDepths().entrySet()) {
+            sender.sendMessage(ChatColor.GRAY + "Queue " + entry.getKey() + ": " + ChatColor.WHITE + entry.getValue());
+        }
+        for (Map.Entry<String, Double> entry : metrics.getCacheHitRates().entrySet()) {
+            sender.sendMessage(ChatColor.GRAY + "Cache " + entry.getKey() + " hit rate: " + ChatColor.WHITE
+                    + String.format(Locale.ROOT, "%.1f%%", entry.getValue() * 100));
+        }
+    }
+
+    private void sendCounters(CommandSender sender, long matched, long rejected, long rendered, long delivered, long failed) {
+        sender.sendMessage(ChatColor.GRAY + "Matched: " + ChatColor.WHITE + matched
+                + ChatColor.GRAY + " Rejected: " + ChatColor.WHITE + rejected
+                + ChatColor.GRAY + " Rendered: " + ChatColor.WHITE + rendered
+                + ChatColor.GRAY + " Delivered: " + ChatColor.WHITE + delivered
+                + ChatColor.GRAY + " Failed: " + ChatColor.WHITE + failed);
+    }
+
+    private void sendProfile(CommandSender sender, AlertProfile profile) {
+        if (profile.getTotal().getCount() == 0) return;
+        sender.sendMessage(ChatColor.GRAY + "Processing: " + ChatColor.WHITE + String.format(Locale.ROOT, "p50 %.2fms, p99 %.2fms",
+                profile.getTotal().getPercentileMillis(50), profile.getTotal().getPercentileMillis(99)));
+        for (AlertProfile.Stage stage : AlertProfile.Stage.values()) {
+            LatencyHistogram histogram = profile.getStage(stage);
+            if (histogram.getCount() == 0) continue;
+            sender.sendMessage(ChatColor.GRAY + " " + stage.name().toLowerCase(Locale.ROOT) + ": " + ChatColor.WHITE + String.format(Locale.ROOT,
+                    "p50 %.2fms, p99 %.2fms", histogram.getPercentileMillis(50), histogram.getPercentileMillis(99)));
+        }
+        for (AlertProfile.Part part : profile.getCostliestParts(3)) {
+            sender.sendMessage(ChatColor.GRAY + " " + part + ": " + ChatColor.WHITE
+                    + String.format(Locale.ROOT, "mean %.3fms over %d runs", part.getMeanMillis(), part.getCount()));
+        }
+    }
+
+    private void sendDigest(CommandSender sender, KeyDigest digest) {
+        if (digest == null || digest.getTotal() == 0) return;
+        sender.sendMessage(ChatColor.GRAY + "Keys: " + ChatColor.WHITE + "~" + digest.getDistinct() + " distinct over " + digest.getTotal() + " occurrences");
+        for (TopKSketch.Counter counter : digest.getTop()) {
+            sender.sendMessage(ChatColor.GRAY + " " + counter.getKey() + ": " + ChatColor.WHITE + counter.getCount()
+                    + (counter.getError() > 0 ? ChatColor.DARK_GRAY + " (±" + counter.getError() + ")" : ""));
+        }
+    }
+
+    private void sendLatency(CommandSender sender, LatencyHistogram histogram) {
+        sender.sendMessage(ChatColor.GRAY + "Event to delivery: " + ChatColor.WHITE + String.format(Locale.ROOT,
+                "mean %.2fms, p50 %.2fms, p95 %.2fms, p99 %.2fms",
+                histogram.getMeanMillis(), histogram.getPercentileMillis(50), histogram.getPercentileMillis(95), histogram.getPercentileMillis(99)));
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.condition;
+
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A chain of property reads & no argument method calls, such as {@code #player.world.name} or {@code state.name()}.
+ * Each step is bound to a {@link MethodHandle} the first time it's evaluated for a class, resolved the same way SpEL's
+ * reflective property accessor & method resolver would. Only what can't be bound is left to SpEL, an exception thrown
+ * by the accessor is reported as a {@link SpelEvaluationException}.
+ */
+final class AccessorChain {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final String variable;
+    private final Step[] steps;
+
+    /**
+     * @param variable the variable the chain starts at, null to start at the root object
+     * @param steps the steps, in order
+     */
+    AccessorChain(String variable, List<Step> steps) {
+        this.variable = variable;
+        this.steps = steps.toArray(new Step[0]);
+    }
+
+    /**
+     * @return the variable the chain starts at, null if it starts at the root object
+     */
+    String getVariable() {
+        return variable;
+    }
+
+    /**
+     * @return the value at the end of the chain, or {@link CompiledCondition#FALLBACK} if it should be evaluated by SpEL
+     */
+    Object get(Object root, Map<String, Object> variables, boolean restricted) {
+        Object value = variable != null ? variables.get(variable) : root;
+        for (Step step : steps) {
+            // let SpEL deal with nulls, it knows about null safe navigation and reports the right error otherwise
+            if (value == null) return CompiledCondition.FALLBACK;
+            value = step.get(value, restricted);
+            if (value == CompiledCondition.FALLBACK) return value;
+        }
+        return value;
+    }
+
+    static final class Step {
+
+        private final String name;
+        private final boolean method;
+        private final Map<Class<?>, Binding> bindings = new ConcurrentHashMap<>();
+        // most steps only ever see one class, skip the map lookup for it
+        private volatile Binding last;
+
+        /**
+         * @param name the property or method name
+         * @param method true if this is a method call, false for a property
+         */
+        Step(String name, boolean method) {
+            this.name = name;
+            this.method = method;
+        }
+
+        Object get(Object target, boolean restricted) {
+            Class<?> type = target.getClass();
+            Binding binding = last;
+            if (binding == null || binding.type != type) {
+                binding = bindings.computeIfAbsent(type, this::bind);
+                last = binding;
+            }
+            if (binding.handle == null || (restricted && !binding.restrictedSafe)) return CompiledCondition.FALLBACK;
+            try {
+                return (Object) binding.handle.invokeExact(target);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                // the accessor itself failed, SpEL would call it again only to fail the same way. report it like SpEL does
+                if (method) throw new SpelEvaluationException(t, SpelMessage.EXCEPTION_DURING_METHOD_INVOCATION, name, type.getName(), t.getMessage());
+                throw new SpelEvaluationException(t, SpelMessage.EXCEPTION_DURING_PROPERTY_READ, name, t.getMessage());
+            }
+        }
+
+        private Binding bind(Class<?> type) {
+            if (type.isArray() || type == Class.class) return new Binding(type, null, false);
+            try {
+                if (method) {
+                    Binding binding = bind(type, name);
+                    if (binding != null) return binding;
+                } else {
+                    for (String suffix : getPropertyMethodSuffixes(name)) {
+                        Binding binding = bind(type, "get" + suffix);
+                        if (binding != null) return binding;
+                    }
+                    for (String suffix : getPropertyMethodSuffixes(name)) {
+                        Method getter = getMethod(type, "is" + suffix);
+                        if (getter != null && (getter.getReturnType() == boolean.class || getter.getReturnType() == Boolean.class)) {
+                            Binding binding = bind(type, "is" + suffix);
+                            if (binding != null) return binding;
+                        }
+                    }
+                    Field field = type.getField(name);
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        return new Binding(type, MethodHandles.publicLookup().unreflectGetter(field).asType(GETTER_TYPE),
+                                isRestrictedSafe(type, field.getDeclaringClass()));
+                    }
+                }
+            } catch (NoSuchFieldException | IllegalAccessException | SecurityException ignored) {
+                // not accessible, leave it to SpEL
+            }
+            return new Binding(type, null, false);
+        }
+
+        /**
+         * Bind the public, non static, no argument method with the given name. If it's implemented by a class we can't
+         * access (a proxy or an internal class), it's called through a public supertype that declares it instead
+         *
+         * @return the binding, null if there's no such method
+         */
+        private static Binding bind(Class<?> type, String name) {
+            Method method = getMethod(type, name);
+            if (method == null || Modifier.isStatic(method.getModifiers())) return null;
+
+            Deque<Class<?>> types = new ArrayDeque<>();
+            Set<Class<?>> seen = new HashSet<>();
+            types.add(type);
+            while (!types.isEmpty()) {
+                Class<?> current = types.poll();
+                if (!seen.add(current)) continue;
+                Method candidate = current == type ? method : getMethod(current, name);
+                if (candidate != null && Modifier.isPublic(candidate.getDeclaringClass().getModifiers())) {
+                    try {
+                        MethodHandle handle = MethodHandles.publicLookup().unreflect(candidate).asType(GETTER_TYPE);
+                        return new Binding(type, handle, isRestrictedSafe(type, candidate.getDeclaringClass()));
+                    } catch (IllegalAccessException ignored) {
+                        // try the supertypes
+                    }
+                }
+                if (current.getSuperclass() != null) types.add(current.getSuperclass());
+                types.addAll(Arrays.asList(current.getInterfaces()));
+            }
+            return new Binding(type, null, false);
+        }
+
+        private static Method getMethod(Class<?> type, String name) {
+            try {
+                return type.getMethod(name);
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        /**
+         * The same rules as SpEL's DataBindingPropertyAccessor & DataBindingMethodResolver
+         */
+        private static boolean isRestrictedSafe(Class<?> type, Class<?> declaringClass) {
+            return declaringClass != Object.class && declaringClass != Class.class && !ClassLoader.class.isAssignableFrom(type);
+        }
+
+        /**
+         * The suffixes SpEL's ReflectivePropertyAccessor tries for a property's getter
+         */
+        private static String[] getPropertyMethodSuffixes(String propertyName) {
+            String suffix = propertyName.length() > 1 && Character.isUpperCase(propertyName.charAt(1))
+                    ? propertyName : Character.toUpperCase(propertyName.charAt(0)) + propertyName.substring(1);
+            if (Character.isUpperCase(suffix.charAt(0))) return new String[] {suffix};
+            return new String[] {suffix, Character.toUpperCase(suffix.charAt(0)) + suffix.substring(1)};
+        }
+
+    }
+
+    private static final class Binding {
+
+        private final Class<?> type;
+        private final MethodHandle handle;
+        private final boolean restrictedSafe;
+
+        /**
+         * @param handle the accessor, null if the step can't be evaluated for the type
+         */
+        private Binding(Class<?> type, MethodHandle handle, boolean restrictedSafe) {
+            this.type = type;
+            this.handle = handle;
+            this.restrictedSafe = restrictedSafe;
+        }
+
+    }
+
+}
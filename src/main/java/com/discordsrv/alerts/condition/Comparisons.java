@@ -0,0 +1,96 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.condition;
+
+import java.util.Objects;
+
+/**
+ * Equality & ordering with the same results as SpEL's operators, for the operand types where that's straightforward
+ */
+final class Comparisons {
+
+    /**
+     * Returned when the result can't be determined without SpEL
+     */
+    static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private Comparisons() {}
+
+    /**
+     * @return 1 if the values are equal, 0 if they aren't, {@link #UNKNOWN} if SpEL has to decide
+     */
+    static int equal(Object left, Object right) {
+        if (left instanceof Number && right instanceof Number) {
+            int comparison = compareNumbers((Number) left, (Number) right);
+            return comparison == UNKNOWN ? UNKNOWN : comparison == 0 ? 1 : 0;
+        }
+        if (left instanceof CharSequence && right instanceof CharSequence) {
+            return left.toString().equals(right.toString()) ? 1 : 0;
+        }
+        if (left instanceof Boolean && right instanceof Boolean) {
+            return left.equals(right) ? 1 : 0;
+        }
+        if ((left != null && left.getClass().isArray()) || (right != null && right.getClass().isArray())) return UNKNOWN;
+        if (Objects.equals(left, right)) return 1;
+        if (left instanceof Comparable && right instanceof Comparable) {
+            // SpEL compares these through their common ancestor
+            if (left.getClass() != right.getClass()) return UNKNOWN;
+            @SuppressWarnings("unchecked")
+            int comparison = ((Comparable<Object>) left).compareTo(right);
+            return comparison == 0 ? 1 : 0;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the sign of the comparison, {@link #UNKNOWN} if SpEL has to decide
+     */
+    static int compare(Object left, Object right) {
+        if (left instanceof Number && right instanceof Number) {
+            return compareNumbers((Number) left, (Number) right);
+        }
+        if (left instanceof CharSequence && right instanceof CharSequence) {
+            return Integer.signum(left.toString().compareTo(right.toString()));
+        }
+        return UNKNOWN;
+    }
+
+    private static int compareNumbers(Number left, Number right) {
+        if (!isPrimitiveWrapper(left) || !isPrimitiveWrapper(right)) return UNKNOWN;
+        if (left instanceof Double || right instanceof Double) {
+            return sign(left.doubleValue(), right.doubleValue());
+        }
+        if (left instanceof Float || right instanceof Float) {
+            return sign(left.floatValue(), right.floatValue());
+        }
+        return Long.compare(left.longValue(), right.longValue());
+    }
+
+    private static int sign(double left, double right) {
+        if (left < right) return -1;
+        if (left > right) return 1;
+        return left == right ? 0 : UNKNOWN; // NaN
+    }
+
+    private static boolean isPrimitiveWrapper(Number number) {
+        return number instanceof Integer || number instanceof Long || number instanceof Double
+                || number instanceof Float || number instanceof Short || number instanceof Byte;
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.condition;
+
+import com.discordsrv.alerts.metrics.CacheMetrics;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpression;
+
+import java.util.Map;
+
+/**
+ * An expression that's only a chain of property reads & no argument method calls, such as
+ * {@code ${caught.itemStack.type.name()}} in a message template, evaluated through {@link java.lang.invoke.MethodHandle}s
+ * bound per class instead of SpEL. Anything it can't evaluate is handed back to SpEL with {@link CompiledCondition#FALLBACK}.
+ */
+public final class CompiledChain {
+
+    private static final CacheMetrics METRICS = new CacheMetrics();
+
+    private final AccessorChain chain;
+
+    private CompiledChain(AccessorChain chain) {
+        this.chain = chain;
+    }
+
+    /**
+     * Compile the given expression
+     *
+     * @param expression the parsed expression
+     * @return the compiled chain, null if the expression isn't a plain chain and should always be evaluated by SpEL
+     */
+    public static CompiledChain compile(Expression expression) {
+        if (!(expression instanceof SpelExpression)) return null;
+        AccessorChain chain = CompiledCondition.compileChain(((SpelExpression) expression).getAST());
+        return chain != null ? new CompiledChain(chain) : null;
+    }
+
+    /**
+     * @return how often compiled chains were evaluated without SpEL (hits) or had to fall back to it (misses)
+     */
+    public static CacheMetrics getMetrics() {
+        return METRICS;
+    }
+
+    /**
+     * @return true if the chain starts at the given variable
+     */
+    public boolean usesVariable(String name) {
+        return name.equals(chain.getVariable());
+    }
+
+    /**
+     * Evaluate this chain
+     *
+     * @param root the root object
+     * @param variables the variables
+     * @param restricted true if only what SpEL's restricted evaluation context allows may be accessed
+     * @return the value, or {@link CompiledCondition#FALLBACK} if the expression has to be evaluated by SpEL
+     */
+    public Object evaluate(Object root, Map<String, Object> variables, boolean restricted) {
+        Object value = chain.get(root, variables, restricted);
+        if (value == CompiledCondition.FALLBACK) {
+            METRICS.miss();
+        } else {
+            METRICS.hit();
+        }
+        return value;
+    }
+
+}
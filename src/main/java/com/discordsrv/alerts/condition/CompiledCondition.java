@@ -0,0 +1,210 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.condition;
+
+import com.discordsrv.alerts.metrics.CacheMetrics;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.ast.*;
+import org.springframework.expression.spel.standard.SpelExpression;
+
+import java.util.*;
+
+/**
+ * A condition compiled to direct accessor calls, for the common conditions that only compare properties with literals
+ * and combine those comparisons, such as {@code violations >= 5 && #player.world.name == 'world_the_end'}.
+ * It gives the same results as SpEL, anything it isn't sure about is handed back to SpEL with {@link #FALLBACK}.
+ */
+public final class CompiledCondition {
+
+    /**
+     * Returned when the condition has to be evaluated by SpEL instead
+     */
+    public static final Object FALLBACK = new Object();
+
+    private static final CacheMetrics METRICS = new CacheMetrics();
+
+    private final Node root;
+    private final Set<String> variables;
+
+    private CompiledCondition(Node root, Set<String> variables) {
+        this.root = root;
+        this.variables = variables;
+    }
+
+    /**
+     * Compile the given expression
+     *
+     * @param expression the parsed expression
+     * @return the compiled condition, null if the expression isn't simple enough and should always be evaluated by SpEL
+     */
+    public static CompiledCondition compile(Expression expression) {
+        if (!(expression instanceof SpelExpression)) return null;
+        Set<String> variables = new HashSet<>();
+        Node root = compile(((SpelExpression) expression).getAST(), variables);
+        return root != null ? new CompiledCondition(root, Collections.unmodifiableSet(variables)) : null;
+    }
+
+    /**
+     * @return true if the condition reads the given variable
+     */
+    public boolean usesVariable(String name) {
+        return variables.contains(name);
+    }
+
+    /**
+     * @return how often compiled conditions were evaluated without SpEL (hits) or had to fall back to it (misses)
+     */
+    public static CacheMetrics getMetrics() {
+        return METRICS;
+    }
+
+    /**
+     * Evaluate this condition
+     *
+     * @param root the root object
+     * @param variables the variables
+     * @param restricted true if only what SpEL's restricted evaluation context allows may be accessed
+     * @return the Boolean result (possibly null), or {@link #FALLBACK} if the condition has to be evaluated by SpEL
+     */
+    public Object evaluate(Object root, Map<String, Object> variables, boolean restricted) {
+        Object value = this.root.evaluate(root, variables, restricted);
+        if (value != null && !(value instanceof Boolean)) value = FALLBACK; // needs SpEL's type conversion
+        if (value == FALLBACK) {
+            METRICS.miss();
+        } else {
+            METRICS.hit();
+        }
+        return value;
+    }
+
+    private static Node compile(SpelNode node, Set<String> usedVariables) {
+        if (node instanceof Literal) {
+            Object value = ((Literal) node).getLiteralValue().getValue();
+            return (root, variables, restricted) -> value;
+        }
+        if (node instanceof OpAnd || node instanceof OpOr) {
+            Node left = compile(node.getChild(0), usedVariables);
+            Node right = compile(node.getChild(1), usedVariables);
+            if (left == null || right == null) return null;
+            boolean and = node instanceof OpAnd;
+            return (root, variables, restricted) -> {
+                Object leftValue = left.evaluate(root, variables, restricted);
+                if (!(leftValue instanceof Boolean)) return FALLBACK;
+                if ((Boolean) leftValue != and) return leftValue;
+                Object rightValue = right.evaluate(root, variables, restricted);
+                return rightValue instanceof Boolean ? rightValue : FALLBACK;
+            };
+        }
+        if (node instanceof OperatorNot) {
+            Node operand = compile(node.getChild(0), usedVariables);
+            if (operand == null) return null;
+            return (root, variables, restricted) -> {
+                Object value = operand.evaluate(root, variables, restricted);
+                return value instanceof Boolean ? !(Boolean) value : FALLBACK;
+            };
+        }
+        if (node instanceof OpEQ || node instanceof OpNE) {
+            Node left = compile(node.getChild(0), usedVariables);
+            Node right = compile(node.getChild(1), usedVariables);
+            if (left == null || right == null) return null;
+            boolean equal = node instanceof OpEQ;
+            return (root, variables, restricted) -> {
+                Object leftValue = left.evaluate(root, variables, restricted);
+                if (leftValue == FALLBACK) return FALLBACK;
+                Object rightValue = right.evaluate(root, variables, restricted);
+                if (rightValue == FALLBACK) return FALLBACK;
+                int result = Comparisons.equal(leftValue, rightValue);
+                return result == Comparisons.UNKNOWN ? FALLBACK : (result == 1) == equal;
+            };
+        }
+        if (node instanceof OpGT || node instanceof OpGE || node instanceof OpLT || node instanceof OpLE) {
+            Node left = compile(node.getChild(0), usedVariables);
+            Node right = compile(node.getChild(1), usedVariables);
+            if (left == null || right == null) return null;
+            Relation relation = node instanceof OpGT ? Relation.GT : node instanceof OpGE ? Relation.GE
+                    : node instanceof OpLT ? Relation.LT : Relation.LE;
+            return (root, variables, restricted) -> {
+                Object leftValue = left.evaluate(root, variables, restricted);
+                if (leftValue == FALLBACK) return FALLBACK;
+                Object rightValue = right.evaluate(root, variables, restricted);
+                if (rightValue == FALLBACK) return FALLBACK;
+                int result = Comparisons.compare(leftValue, rightValue);
+                return result == Comparisons.UNKNOWN ? FALLBACK : relation.test(result);
+            };
+        }
+
+        AccessorChain chain = compileChain(node);
+        if (chain == null) return null;
+        if (chain.getVariable() != null) usedVariables.add(chain.getVariable());
+        return chain::get;
+    }
+
+    static AccessorChain compileChain(SpelNode node) {
+        List<SpelNode> parts = new ArrayList<>();
+        if (node instanceof CompoundExpression) {
+            for (int i = 0; i < node.getChildCount(); i++) parts.add(node.getChild(i));
+        } else {
+            parts.add(node);
+        }
+
+        String variable = null;
+        List<AccessorChain.Step> steps = new ArrayList<>();
+        for (int i = 0; i < parts.size(); i++) {
+            SpelNode part = parts.get(i);
+            if (part instanceof VariableReference && i == 0) {
+                String name = part.toStringAST().substring(1);
+                // #this & #root change meaning inside selections, keep it simple and leave them to SpEL
+                if (name.equals("this") || name.equals("root")) return null;
+                variable = name;
+            } else if (part instanceof PropertyOrFieldReference) {
+                steps.add(new AccessorChain.Step(((PropertyOrFieldReference) part).getName(), false));
+            } else if (part instanceof MethodReference && part.getChildCount() == 0) {
+                steps.add(new AccessorChain.Step(((MethodReference) part).getName(), true));
+            } else {
+                return null;
+            }
+        }
+        return new AccessorChain(variable, steps);
+    }
+
+    private interface Node {
+
+        Object evaluate(Object root, Map<String, Object> variables, boolean restricted);
+
+    }
+
+    private enum Relation {
+        GT, GE, LT, LE;
+
+        private boolean test(int comparison) {
+            switch (this) {
+                case GT:
+                    return comparison > 0;
+                case GE:
+                    return comparison >= 0;
+                case LT:
+                    return comparison < 0;
+                default:
+                    return comparison <= 0;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.condition;
+
+import com.discordsrv.alerts.util.SpELExpressionBuilder;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ParseException;
+
+/**
+ * A condition of an alert: the parsed expression, and its compiled form if it's simple enough to have one
+ */
+public final class Condition {
+
+    private final Expression expression;
+    private final CompiledCondition compiled;
+
+    private Condition(Expression expression) {
+        this.expression = expression;
+        this.compiled = CompiledCondition.compile(expression);
+    }
+
+    /**
+     * Parse & compile the given condition
+     *
+     * @param expression the condition
+     * @return the condition
+     * @throws ParseException if the expression is invalid
+     */
+    public static Condition parse(String expression) throws ParseException {
+        return new Condition(SpELExpressionBuilder.parse(expression));
+    }
+
+    public Expression getExpression() {
+        return expression;
+    }
+
+    public String getExpressionString() {
+        return expression.getExpressionString();
+    }
+
+    /**
+     * @return the compiled condition, null if it's always evaluated by SpEL
+     */
+    public CompiledCondition getCompiled() {
+        return compiled;
+    }
+
+}
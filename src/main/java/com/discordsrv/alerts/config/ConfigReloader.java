@@ -0,0 +1,180 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.config;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.alert.AlertSnapshot;
+import com.discordsrv.alerts.listener.AlertListener;
+import github.scarsz.configuralize.DynamicConfig;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the configuration in the background: the file is parsed and the alerts are compiled on a separate thread,
+ * the result is only handed to the listener (on the main thread) once everything compiled.
+ * Optionally watches config.yml and reloads whenever it changes.
+ */
+public class ConfigReloader {
+
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private final Alerts plugin;
+    private final File file;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Alerts config reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private WatchService watchService;
+    private Thread watchThread;
+    private volatile int lastContentHash;
+
+    public ConfigReloader(Alerts plugin, File file) {
+        this.plugin = plugin;
+        this.file = file;
+        this.lastContentHash = contentHash();
+    }
+
+    /**
+     * Start watching the config file for changes
+     */
+    public void watch() {
+        if (watchService != null) return;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            file.getParentFile().toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            plugin.error("Failed to watch " + file.getName() + " for changes", e);
+            return;
+        }
+        watchThread = new Thread(this::runWatcher, "Alerts config watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    public void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {}
+            watchService = null;
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reload the configuration & alerts in the background
+     *
+     * @param sender who to report the outcome to, null to only log it
+     */
+    public void reload(CommandSender sender) {
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            lastContentHash = contentHash();
+
+            DynamicConfig config = plugin.createConfig();
+            try {
+                config.saveAllDefaults();
+                config.loadAll();
+            } catch (Exception e) {
+                report(sender, true, "Failed to load " + file.getName() + ", keeping the current configuration -> " + e.getMessage());
+                return;
+            }
+
+            AlertListener listener = plugin.getListener();
+            AlertSnapshot snapshot = listener.compile(config);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            if (!plugin.isEnabled()) return;
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                plugin.setConfig(config);
+                listener.publish(snapshot);
+
+                int count = snapshot.getAlerts().size();
+                report(sender, false, "Reloaded " + count + " alert" + (count != 1 ? "s" : "")
+                        + " (" + snapshot.getReused() + " unchanged) in " + millis + "ms");
+                // the errors themselves are logged by the listener, only tell the sender about them
+                if (sender != null) {
+                    for (String error : snapshot.getErrors()) sender.sendMessage(ChatColor.RED + error);
+                }
+            });
+        });
+    }
+
+    private void report(CommandSender sender, boolean error, String message) {
+        if (error) {
+            plugin.error(message);
+        } else {
+            plugin.info(message);
+        }
+        if (sender != null) sender.sendMessage((error ? ChatColor.RED : ChatColor.AQUA) + message);
+    }
+
+    private void runWatcher() {
+        WatchService watchService = this.watchService;
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = pollChanged(key);
+                if (!changed) continue;
+
+                // editors tend to write a file in several steps, wait for them to settle
+                while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    pollChanged(key);
+                }
+
+                if (contentHash() == lastContentHash) continue;
+                plugin.info(file.getName() + " changed, reloading");
+                reload(null);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // stopped
+        }
+    }
+
+    private boolean pollChanged(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (context instanceof Path && ((Path) context).getFileName().toString().equals(file.getName())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private int contentHash() {
+        try {
+            return Arrays.hashCode(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+}
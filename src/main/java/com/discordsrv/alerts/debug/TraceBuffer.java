@@ -0,0 +1,124 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.debug;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed size ring buffer of the most recent {@link TraceEvent}s. Recording is lock-free (one atomic increment and
+ * an ordered store), once the buffer is full the oldest events are overwritten.
+ */
+public class TraceBuffer {
+
+    private final AtomicReferenceArray<TraceEvent> events;
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong();
+
+    /**
+     * @param size the amount of events to keep, rounded up to a power of two
+     */
+    public TraceBuffer(int size) {
+        int capacity = capacityFor(size);
+        this.events = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return the capacity of a buffer created with the given size
+     */
+    public static int capacityFor(int size) {
+        return Integer.highestOneBit(Math.max(2, size) - 1) << 1;
+    }
+
+    public int getCapacity() {
+        return events.length();
+    }
+
+    /**
+     * @return the amount of events recorded since the buffer was created
+     */
+    public long getRecorded() {
+        return cursor.get();
+    }
+
+    public void record(TraceEvent.Type type, String alert) {
+        record(type, alert, null, null);
+    }
+
+    public void record(TraceEvent.Type type, String alert, String detail) {
+        record(type, alert, detail, null);
+    }
+
+    /**
+     * Record an event
+     *
+     * @param type the type of event
+     * @param alert the name of the alert
+     * @param detail what the event is about, like the expression of a condition, may be null
+     * @param value the outcome, like the value of a condition, turned into text only when dumped, may be null
+     */
+    public void record(TraceEvent.Type type, String alert, String detail, Object value) {
+        long sequence = cursor.getAndIncrement();
+        events.lazySet((int) (sequence & mask), new TraceEvent(sequence, type, alert, detail, value));
+    }
+
+    /**
+     * @return the events in the buffer, oldest first
+     */
+    public List<TraceEvent> snapshot() {
+        long end = cursor.get();
+        long start = Math.max(0, end - events.length());
+        List<TraceEvent> snapshot = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            TraceEvent event = events.get((int) (sequence & mask));
+            // a slot can be claimed but not written yet, or overwritten by a newer event while reading
+            if (event != null && event.getSequence() == sequence) snapshot.add(event);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Write the events in the buffer to a file, one per line
+     *
+     * @param file the file to write to
+     * @return the amount of events written
+     * @throws IOException if the file couldn't be written
+     */
+    public int dump(File file) throws IOException {
+        List<TraceEvent> snapshot = snapshot();
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) throw new IOException("Failed to create " + parent);
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (TraceEvent event : snapshot) {
+                writer.write(event.toString());
+                writer.newLine();
+            }
+        }
+        return snapshot.size();
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.debug;
+
+import java.time.Instant;
+
+/**
+ * Something that happened to an alert, recorded by the {@link TraceBuffer}. The detail & value are kept as they are
+ * and only turned into text when the trace is dumped.
+ */
+public final class TraceEvent {
+
+    public enum Type {
+        MATCHED,
+        SKIPPED,
+        CONDITION,
+        REJECTED,
+        RENDERED,
+        AGGREGATED,
+        RETRYING,
+        DELIVERED,
+        FAILED
+    }
+
+    private final long sequence;
+    private final long timeMillis;
+    private final String thread;
+    private final Type type;
+    private final String alert;
+    private final String detail;
+    private final Object value;
+
+    TraceEvent(long sequence, Type type, String alert, String detail, Object value) {
+        this.sequence = sequence;
+        this.timeMillis = System.currentTimeMillis();
+        this.thread = Thread.currentThread().getName();
+        this.type = type;
+        this.alert = alert;
+        this.detail = detail;
+        this.value = value;
+    }
+
+    /**
+     * @return the position of the event in the trace
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getAlert() {
+        return alert;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(96)
+                .append(Instant.ofEpochMilli(timeMillis)).append(" [").append(thread).append("] ")
+                .append(type).append(' ').append(alert);
+        if (detail != null) builder.append(' ').append(detail);
+        if (value != null) builder.append(" -> ").append(value);
+        return builder.toString();
+    }
+
+}
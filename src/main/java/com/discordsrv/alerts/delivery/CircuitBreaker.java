@@ -0,0 +1,166 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.delivery;
+
+/**
+ * Tracks whether a destination is reachable, so alerts for a dead destination aren't rendered just to fail.
+ * <ul>
+ *     <li>closed - alerts are delivered as usual</li>
+ *     <li>open - after FailureThreshold failures in a row alerts are rejected before they're rendered, until OpenFor has
+ *     passed. The time doubles every time a probe fails, up to 16 times OpenFor</li>
+ *     <li>half open - one alert is let through as a probe, its delivery closes the circuit or opens it again</li>
+ *     <li>disabled - the destination responded with 404 Not Found NotFoundThreshold times in a row, it's rejected until
+ *     alerts are reloaded</li>
+ * </ul>
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN,
+        DISABLED
+    }
+
+    private static final int MAX_OPEN_MULTIPLIER = 16;
+
+    private final String destinationKey;
+    private final int failureThreshold;
+    private final int notFoundThreshold;
+    private final long openMillis;
+
+    // guarded by this
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private int notFound = 0;
+    private long currentOpenMillis;
+    private long openUntil = 0;
+    private long probeStarted = 0;
+    private long rejected = 0;
+
+    public CircuitBreaker(String destinationKey, int failureThreshold, int notFoundThreshold, long openMillis) {
+        this.destinationKey = destinationKey;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.notFoundThreshold = Math.max(1, notFoundThreshold);
+        this.openMillis = Math.max(1, openMillis);
+        this.currentOpenMillis = this.openMillis;
+    }
+
+    public String getDestinationKey() {
+        return destinationKey;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return true if an alert for this destination should be rendered, false if it should be rejected
+     */
+    public synchronized boolean allowRequest() {
+        long now = System.currentTimeMillis();
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now < openUntil) break;
+                state = State.HALF_OPEN;
+                probeStarted = now;
+                return true;
+            case HALF_OPEN:
+                // the probe might never be delivered (rejected by its conditions for example), let another one through
+                if (now - probeStarted < openMillis) break;
+                probeStarted = now;
+                return true;
+            default:
+                break;
+        }
+        rejected++;
+        return false;
+    }
+
+    /**
+     * Record a successful delivery
+     *
+     * @return the previous state
+     */
+    public synchronized State success() {
+        State previous = state;
+        if (state == State.DISABLED) return previous;
+        state = State.CLOSED;
+        failures = 0;
+        notFound = 0;
+        currentOpenMillis = openMillis;
+        return previous;
+    }
+
+    /**
+     * Record a failed delivery
+     *
+     * @param notFound true if the destination responded with 404 Not Found
+     * @return the new state
+     */
+    public synchronized State failure(boolean notFound) {
+        if (state == State.DISABLED) return state;
+        this.notFound = notFound ? this.notFound + 1 : 0;
+        if (this.notFound >= notFoundThreshold) {
+            state = State.DISABLED;
+            return state;
+        }
+
+        failures++;
+        if (state == State.HALF_OPEN) {
+            currentOpenMillis = Math.min(currentOpenMillis * 2, openMillis * MAX_OPEN_MULTIPLIER);
+            open();
+        } else if (state == State.CLOSED && failures >= failureThreshold) {
+            open();
+        }
+        return state;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = System.currentTimeMillis() + currentOpenMillis;
+    }
+
+    /**
+     * Close the circuit, also if it was disabled. Used when alerts are reloaded
+     */
+    public synchronized void reset() {
+        state = State.CLOSED;
+        failures = 0;
+        notFound = 0;
+        currentOpenMillis = openMillis;
+    }
+
+    /**
+     * @return how many alerts were rejected by this circuit
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return true if messages for this destination shouldn't be retried anymore
+     */
+    public synchronized boolean isDisabled() {
+        return state == State.DISABLED;
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.delivery;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.alert.Priority;
+import com.discordsrv.alerts.debug.TraceBuffer;
+import com.discordsrv.alerts.debug.TraceEvent;
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+/**
+ * The queue of one destination & priority, delivered strictly in order by at most one thread of the shared delivery
+ * pool at a time. A lane that is waiting to retry a failed delivery doesn't hold on to a thread, so one unreachable
+ * channel doesn't hold up the others. Which lane gets the next free thread is up to the {@link LaneScheduler}.
+ */
+public class DeliveryLane {
+
+    private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    // how many messages a lane delivers before giving its thread to the next lane
+    private static final int TURN_SIZE = 16;
+
+    private final Alerts plugin;
+    private final Destination destination;
+    private final Priority priority;
+    private final OutboundQueue queue;
+    private final LaneScheduler scheduler;
+    private final CircuitBreaker circuit;
+    private final BiPredicate<Destination, OutboundMessage> sender;
+    private final BiConsumer<OutboundQueue.Entry, Boolean> completed;
+    private final long retryMillis;
+
+    // guarded by this
+    private boolean scheduled = false;
+
+    // only used by the turn that is running
+    private OutboundQueue.Entry current;
+    private long backoff = INITIAL_BACKOFF_MILLIS;
+
+    /**
+     * @param destination the destination of every message in this lane
+     * @param priority the priority of every message in this lane
+     * @param queue the queue of the lane
+     * @param scheduler the scheduler of the shared delivery pool
+     * @param circuit the circuit breaker of the destination, messages aren't retried once it's disabled
+     * @param sender sends a message, returns true if it was delivered
+     * @param completed called with every message once it was delivered (true) or given up on (false)
+     * @param retryMillis how long after a message was created to keep retrying it
+     */
+    public DeliveryLane(Alerts plugin, Destination destination, Priority priority, OutboundQueue queue, LaneScheduler scheduler,
+                        CircuitBreaker circuit, BiPredicate<Destination, OutboundMessage> sender, BiConsumer<OutboundQueue.Entry, Boolean> completed,
+                        long retryMillis) {
+        this.plugin = plugin;
+        this.destination = destination;
+        this.priority = priority;
+        this.queue = queue;
+        this.scheduler = scheduler;
+        this.circuit = circuit;
+        this.sender = sender;
+        this.completed = completed;
+        this.retryMillis = retryMillis;
+    }
+
+    public Destination getDestination() {
+        return destination;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public OutboundQueue getQueue() {
+        return queue;
+    }
+
+    /**
+     * Add a message to the end of the lane
+     *
+     * @param entry the message
+     * @param bytes the serialized message
+     * @throws IOException if the message couldn't be queued
+     */
+    public void offer(OutboundQueue.Entry entry, byte[] bytes) throws IOException {
+        queue.offer(entry, bytes);
+        schedule();
+    }
+
+    /**
+     * @return true if nothing is queued or being delivered
+     */
+    public synchronized boolean isIdle() {
+        return !scheduled && queue.size() == 0;
+    }
+
+    private synchronized void schedule() {
+        if (scheduled) return;
+        try {
+            scheduler.submit(this);
+            scheduled = true;
+        } catch (RejectedExecutionException ignored) {
+            // shutting down, the queue is closed right after
+        }
+    }
+
+    /**
+     * Deliver a turn's worth of messages, called by the {@link LaneScheduler}
+     */
+    void run() {
+        for (int i = 0; i < TURN_SIZE; i++) {
+            OutboundQueue.Entry entry = current != null ? current : queue.poll();
+            if (entry == null) break;
+            current = entry;
+
+            boolean delivered;
+            try {
+                delivered = sender.test(destination, entry.getMessage());
+            } catch (RuntimeException e) {
+                plugin.error("Failed to deliver alert to " + destination, e);
+                delivered = false;
+            }
+
+            if (!delivered && !circuit.isDisabled() && System.currentTimeMillis() - entry.getMessage().getCreatedMillis() + backoff <= retryMillis) {
+                // keep the message at the head of the lane and try again later, without holding on to the thread
+                try {
+                    scheduler.schedule(this, backoff);
+                    if (plugin.isDebug()) plugin.debug("Failed to deliver alert to " + destination + ", retrying in " + backoff + "ms");
+                    TraceBuffer trace = plugin.getTraceBuffer();
+                    if (trace != null) trace.record(TraceEvent.Type.RETRYING, entry.getMessage().getAlertName(), destination.toString(), backoff);
+                    backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+                    return;
+                } catch (RejectedExecutionException ignored) {
+                    // shutting down, give up on it
+                }
+            }
+
+            current = null;
+            backoff = INITIAL_BACKOFF_MILLIS;
+            completed.accept(entry, delivered);
+        }
+
+        synchronized (this) {
+            scheduled = false;
+            if (queue.size() > 0) schedule();
+        }
+    }
+
+}
@@ -0,0 +1,423 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.delivery;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.alert.Priority;
+import com.discordsrv.alerts.debug.TraceBuffer;
+import com.discordsrv.alerts.debug.TraceEvent;
+import com.discordsrv.alerts.delivery.journal.DeliveryJournal;
+import com.discordsrv.alerts.delivery.sink.SinkManager;
+import com.discordsrv.alerts.hook.DiscordSRVHook;
+import com.discordsrv.alerts.metrics.AlertMetrics;
+import com.discordsrv.alerts.util.DurationUtil;
+import com.discordsrv.alerts.util.MessageFormat;
+import github.scarsz.configuralize.DynamicConfig;
+import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.dependencies.jda.api.entities.Message;
+import github.scarsz.discordsrv.dependencies.jda.api.entities.TextChannel;
+import github.scarsz.discordsrv.util.DiscordUtil;
+import github.scarsz.discordsrv.util.WebhookUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queues rendered alerts and sends them to their destinations, journaling them first when the delivery journal is
+ * enabled. Every destination has its own {@link DeliveryLane} per priority that delivers in order, the lanes share a
+ * small pool of sender threads so different channels are delivered to in parallel, and high priority alerts don't wait
+ * behind bulk traffic to the same channel. Failed deliveries are retried with a backoff for
+ * a while, during an outage the queues grow and spill to disk once they're over the shared memory budget.
+ * Alerts for sinks skip the queues & journal and are handed to the {@link SinkManager}, which batches them itself.
+ */
+public class DeliveryService {
+
+    private final Alerts plugin;
+    private final WebhookSender webhookSender;
+    private final SinkManager sinkManager;
+    private final Map<String, DeliveryLane> lanes = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> circuits = new ConcurrentHashMap<>();
+    private final AtomicInteger laneIds = new AtomicInteger();
+    private ScheduledExecutorService executor;
+    private LaneScheduler scheduler;
+    private OutboundQueue.Budget budget;
+    private File overflowDirectory;
+    private long retryMillis;
+    private int failureThreshold;
+    private int notFoundThreshold;
+    private long openMillis;
+    private DeliveryJournal journal;
+    private BukkitTask fsyncTask;
+    private BukkitTask compactTask;
+
+    public DeliveryService(Alerts plugin) {
+        this.plugin = plugin;
+        this.webhookSender = new WebhookSender(plugin);
+        this.sinkManager = new SinkManager(plugin, webhookSender);
+    }
+
+    /**
+     * Start the sender pool, open the journal (if enabled) and replay whatever wasn't delivered before the last shutdown
+     */
+    public void start() {
+        DynamicConfig config = plugin.config();
+        sinkManager.start();
+
+        long budget = Math.max(1, config.getOptionalInt("Queue.MemoryBudgetKb").orElse(8192)) * 1024L;
+        int senderCount = Math.max(1, config.getOptionalInt("Queue.Senders").orElse(4));
+        retryMillis = DurationUtil.parseMillis(config.getOptionalString("Queue.RetryFor").orElse(null), TimeUnit.MINUTES.toMillis(10));
+        failureThreshold = config.getOptionalInt("CircuitBreaker.FailureThreshold").orElse(5);
+        notFoundThreshold = config.getOptionalInt("CircuitBreaker.NotFoundThreshold").orElse(3);
+        openMillis = DurationUtil.parseMillis(config.getOptionalString("CircuitBreaker.OpenFor").orElse(null), TimeUnit.SECONDS.toMillis(30));
+        this.budget = new OutboundQueue.Budget(budget);
+        overflowDirectory = new File(plugin.getDataFolder(), "outbound-overflow");
+        deleteOverflow();
+        if (!overflowDirectory.isDirectory() && !overflowDirectory.mkdirs()) {
+            plugin.error("Failed to create " + overflowDirectory + ", alerts that don't fit in memory will be dropped");
+        }
+        AtomicInteger threadIds = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(senderCount, runnable -> {
+            Thread thread = new Thread(runnable, "Alerts delivery #" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = new LaneScheduler(executor);
+        plugin.getMetrics().registerGauge("outbound_queue", () -> lanes.values().stream().mapToInt(lane -> lane.getQueue().size()).sum());
+        for (Priority priority : Priority.values()) {
+            plugin.getMetrics().registerGauge("outbound_queue_" + priority.name().toLowerCase(Locale.ROOT), () -> lanes.values().stream()
+                    .filter(lane -> lane.getPriority() == priority).mapToInt(lane -> lane.getQueue().size()).sum());
+        }
+        plugin.getMetrics().registerGauge("outbound_queue_bytes", this.budget::getUsed);
+        plugin.getMetrics().registerGauge("outbound_spilled", () -> lanes.values().stream().mapToInt(lane -> lane.getQueue().getSpilled()).sum());
+        plugin.getMetrics().registerGauge("outbound_lanes", lanes::size);
+        plugin.getMetrics().registerGauge("circuits_open", () -> circuits.values().stream()
+                .filter(circuit -> circuit.getState() == CircuitBreaker.State.OPEN || circuit.getState() == CircuitBreaker.State.HALF_OPEN).count());
+        plugin.getMetrics().registerGauge("circuits_disabled", () -> circuits.values().stream().filter(CircuitBreaker::isDisabled).count());
+        plugin.getMetrics().registerGauge("circuit_rejected", () -> circuits.values().stream().mapToLong(CircuitBreaker::getRejected).sum());
+
+        if (!config.getOptionalBoolean("Journal.Enabled").orElse(false)) return;
+
+        DeliveryJournal.Fsync fsync;
+        String fsyncName = config.getOptionalString("Journal.Fsync").orElse("interval");
+        try {
+            fsync = DeliveryJournal.Fsync.valueOf(fsyncName.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            plugin.error("Invalid Journal.Fsync \"" + fsyncName + "\", expected always, interval or never. Using interval");
+            fsync = DeliveryJournal.Fsync.INTERVAL;
+        }
+        int segmentSize = Math.max(1, config.getOptionalInt("Journal.SegmentSizeMb").orElse(4)) * 1024 * 1024;
+
+        DeliveryJournal journal = new DeliveryJournal(plugin, new File(plugin.getDataFolder(), "journal"), segmentSize, fsync);
+        try {
+            journal.open();
+        } catch (IOException e) {
+            plugin.error("Failed to open the delivery journal, alerts won't be journaled", e);
+            return;
+        }
+        this.journal = journal;
+        plugin.getMetrics().registerGauge("journal_pending", journal::getPendingCount);
+
+        if (fsync == DeliveryJournal.Fsync.INTERVAL) {
+            long interval = DurationUtil.parseMillis(config.getOptionalString("Journal.FsyncInterval").orElse(null), TimeUnit.SECONDS.toMillis(1));
+            long ticks = Math.max(1, interval / 50);
+            fsyncTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, journal::force, ticks, ticks);
+        }
+        compactTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            try {
+                journal.compact();
+            } catch (IOException e) {
+                plugin.error("Failed to compact the delivery journal", e);
+            }
+        }, 200L, 200L);
+
+        List<DeliveryJournal.OutboundEntry> recovered = journal.takeRecovered();
+        if (!recovered.isEmpty()) {
+            long maxAge = DurationUtil.parseMillis(config.getOptionalString("Journal.MaxAge").orElse(null), TimeUnit.DAYS.toMillis(1));
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> replay(recovered, maxAge));
+        }
+    }
+
+    public void stop() {
+        sinkManager.stop();
+        if (executor != null) {
+            try {
+                if (!awaitIdle(5, TimeUnit.SECONDS)) {
+                    plugin.info("Gave up waiting for queued alerts to be delivered"
+                            + (journal != null ? ", they will be sent on the next start" : ""));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor.shutdownNow();
+            executor = null;
+            scheduler = null;
+            int remaining = 0;
+            for (DeliveryLane lane : lanes.values()) remaining += lane.getQueue().close();
+            lanes.clear();
+            if (remaining > 0 && journal == null) {
+                plugin.error(remaining + " queued alert" + (remaining != 1 ? "s were" : " was") + " not delivered");
+            }
+        }
+
+        if (fsyncTask != null) fsyncTask.cancel();
+        if (compactTask != null) compactTask.cancel();
+        fsyncTask = null;
+        compactTask = null;
+        if (journal != null) {
+            // anything still in flight stays pending and is replayed on the next start
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * Get the circuit breaker of the given destination
+     *
+     * @param destination the destination
+     * @return the circuit breaker, null for sinks
+     */
+    public CircuitBreaker getCircuit(Destination destination) {
+        if (destination.isSink()) return null;
+        return circuits.computeIfAbsent(destination.getKey(),
+                key -> new CircuitBreaker(key, failureThreshold, notFoundThreshold, openMillis));
+    }
+
+    /**
+     * Close every circuit, including those of destinations that were disabled. Used when alerts are reloaded
+     */
+    public void resetCircuits() {
+        circuits.values().forEach(CircuitBreaker::reset);
+    }
+
+    /**
+     * Queue a rendered alert for delivery
+     *
+     * @param destination where to send the message
+     * @param message the rendered message
+     * @param metrics the metrics of the alert
+     * @param eventNanos the {@link System#nanoTime()} of when the triggering event was received
+     * @param priority the priority of the alert
+     */
+    public void deliver(Destination destination, OutboundMessage message, AlertMetrics metrics, long eventNanos, Priority priority) {
+        if (destination.isSink()) {
+            sinkManager.deliver(destination, message, metrics, eventNanos);
+            return;
+        }
+
+        byte[] bytes = message.toBytes();
+        DeliveryJournal journal = this.journal;
+        long sequence = -1;
+        if (journal != null) {
+            try {
+                sequence = journal.append(bytes);
+            } catch (IOException e) {
+                plugin.error("Failed to journal alert for " + destination + ", delivering it anyway", e);
+            }
+        }
+
+        LaneScheduler scheduler = this.scheduler;
+        try {
+            if (scheduler == null) throw new IOException("Delivery isn't running");
+            DeliveryLane lane = lanes.computeIfAbsent(priority + " " + destination.getKey(), key -> new DeliveryLane(plugin, destination, priority,
+                    new OutboundQueue(new File(overflowDirectory, laneIds.incrementAndGet() + ".bin"), budget,
+                            (alertNames, cause) -> lost(destination, alertNames, cause)),
+                    scheduler, getCircuit(destination), (target, outbound) -> send(target, outbound, priority), this::completed, retryMillis));
+            lane.offer(new OutboundQueue.Entry(message, eventNanos, sequence), bytes);
+        } catch (IOException e) {
+            metrics.failed();
+            plugin.error("Failed to queue alert for " + destination + " -> " + e.getMessage());
+        }
+    }
+
+    private void completed(OutboundQueue.Entry entry, boolean delivered) {
+        AlertMetrics metrics = plugin.getMetrics().alert(entry.getMessage().getAlertName());
+        TraceBuffer trace = plugin.getTraceBuffer();
+        if (trace != null) {
+            trace.record(delivered ? TraceEvent.Type.DELIVERED : TraceEvent.Type.FAILED, metrics.getName(),
+                    Destination.describe(entry.getMessage().getDestinationKey()));
+        }
+        if (delivered) {
+            plugin.getMetrics().delivered(metrics, entry.getEventNanos());
+            ack(journal, entry.getSequence());
+        } else {
+            metrics.failed();
+            if (plugin.isDebug()) {
+                plugin.debug("Failed to deliver alert to " + Destination.describe(entry.getMessage().getDestinationKey())
+                        + (entry.getSequence() != -1 ? ", it will be retried on the next start" : ""));
+            }
+        }
+    }
+
+    private void lost(Destination destination, List<String> alertNames, IOException cause) {
+        plugin.error("Failed to read back " + alertNames.size() + " alert" + (alertNames.size() != 1 ? "s" : "")
+                + " for " + destination + " from the overflow file, they're lost"
+                + (journal != null ? " until they're replayed from the journal on the next start" : "") + " -> " + cause.getMessage());
+        TraceBuffer trace = plugin.getTraceBuffer();
+        for (String alertName : alertNames) {
+            AlertMetrics metrics = plugin.getMetrics().alert(alertName);
+            if (trace != null) trace.record(TraceEvent.Type.FAILED, metrics.getName(), destination.toString());
+            metrics.failed();
+        }
+    }
+
+    private boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!lanes.values().stream().allMatch(DeliveryLane::isIdle)) {
+            if (System.nanoTime() - deadline >= 0) return false;
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    private void deleteOverflow() {
+        // left behind if the server crashed, the lanes are numbered again every start
+        File[] files = overflowDirectory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (!file.delete()) plugin.debug("Failed to delete " + file);
+        }
+    }
+
+    private void replay(List<DeliveryJournal.OutboundEntry> entries, long maxAge) {
+        plugin.info("Replaying " + entries.size() + " undelivered alert" + (entries.size() != 1 ? "s" : "") + " from the delivery journal");
+        int delivered = 0, failed = 0, expired = 0;
+        for (DeliveryJournal.OutboundEntry entry : entries) {
+            OutboundMessage message = entry.getMessage();
+            if (System.currentTimeMillis() - message.getCreatedMillis() > maxAge) {
+                ack(journal, entry.getSequence());
+                expired++;
+                continue;
+            }
+
+            Destination destination = resolve(message.getDestinationKey());
+            if (destination != null && send(destination, message, Priority.NORMAL)) {
+                ack(journal, entry.getSequence());
+                delivered++;
+            } else {
+                failed++;
+            }
+        }
+        plugin.info("Delivery journal replay done: " + delivered + " delivered, " + failed + " failed (kept for the next start), "
+                + expired + " dropped for being older than " + DurationUtil.format(maxAge));
+    }
+
+    private Destination resolve(String destinationKey) {
+        if (destinationKey.startsWith("webhook:")) {
+            return Destination.webhook(destinationKey.substring("webhook:".length()));
+        }
+        if (destinationKey.startsWith("channel:")) {
+            DiscordSRVHook hook = plugin.getDiscordSRVHook().orElse(null);
+            if (hook == null || !hook.awaitReady(2, TimeUnit.MINUTES)) return null;
+            TextChannel textChannel = DiscordUtil.getTextChannelById(destinationKey.substring("channel:".length()));
+            return textChannel != null ? Destination.channel(textChannel) : null;
+        }
+        return null;
+    }
+
+    private boolean send(Destination destination, OutboundMessage outbound, Priority priority) {
+        CircuitBreaker circuit = getCircuit(destination);
+        // messages that were queued before the destination was disabled
+        if (circuit.isDisabled()) return false;
+
+        MessageFormat message = outbound.getMessage();
+        if (destination.isWebhook()) {
+            WebhookSender.Result result = webhookSender.send(destination.getWebhookUrl(),
+                    com.discordsrv.alerts.util.DiscordUtil.toWebhookJson(message), priority);
+            record(circuit, result == WebhookSender.Result.DELIVERED, result == WebhookSender.Result.NOT_FOUND);
+            return result == WebhookSender.Result.DELIVERED;
+        }
+
+        // post through the channel's webhook (the one DiscordSRV uses) so the result is known before the message is acked
+        TextChannel textChannel = destination.getChannel();
+        String webhookUrl;
+        try {
+            webhookUrl = WebhookUtil.getWebhookUrlToUseForChannel(textChannel);
+        } catch (RuntimeException e) {
+            // missing the manage webhooks permission, for example
+            plugin.debug("Couldn't get a webhook for #" + textChannel.getName() + ", sending as the bot: " + e);
+            webhookUrl = null;
+        }
+        if (webhookUrl != null) {
+            WebhookSender.Result result = webhookSender.send(webhookUrl, com.discordsrv.alerts.util.DiscordUtil.toWebhookJson(message), priority);
+            if (result == WebhookSender.Result.DELIVERED) {
+                record(circuit, true, false);
+                return true;
+            }
+            if (result != WebhookSender.Result.NOT_FOUND) {
+                record(circuit, false, false);
+                return false;
+            }
+            // DiscordSRV's webhook was deleted, which doesn't mean the channel was. send this one as the bot instead
+        }
+
+        // the message is already rendered, nothing left to translate
+        Message discordMessage = DiscordSRV.translateMessage(message.toDiscordSRV(), (content, needsEscape) -> content);
+        if (discordMessage == null) return false;
+        try {
+            textChannel.sendMessage(discordMessage).complete();
+            record(circuit, true, false);
+            return true;
+        } catch (RuntimeException e) {
+            plugin.error("Failed to deliver alert to #" + textChannel.getName() + " -> " + e.getMessage());
+            record(circuit, false, false);
+            return false;
+        }
+    }
+
+    private void record(CircuitBreaker circuit, boolean delivered, boolean notFound) {
+        if (delivered) {
+            CircuitBreaker.State previous = circuit.success();
+            if (previous == CircuitBreaker.State.OPEN || previous == CircuitBreaker.State.HALF_OPEN) {
+                plugin.info("Delivery to " + Destination.describe(circuit.getDestinationKey()) + " recovered, sending alerts to it again");
+            }
+            return;
+        }
+
+        CircuitBreaker.State previous = circuit.getState();
+        CircuitBreaker.State state = circuit.failure(notFound);
+        if (state == previous) return;
+        if (state == CircuitBreaker.State.DISABLED) {
+            plugin.warning("Disabled delivery to " + Destination.describe(circuit.getDestinationKey()) + ": it doesn't exist anymore (404 Not Found)."
+                    + " Alerts for it are dropped until alerts are reloaded");
+        } else if (state == CircuitBreaker.State.OPEN && previous == CircuitBreaker.State.CLOSED) {
+            plugin.warning("Delivery to " + Destination.describe(circuit.getDestinationKey()) + " keeps failing, alerts for it are rejected for now"
+                    + " and delivery is retried every now and then");
+        }
+    }
+
+    private void ack(DeliveryJournal journal, long sequence) {
+        if (journal == null || sequence == -1) return;
+        try {
+            journal.ack(sequence);
+        } catch (IOException e) {
+            plugin.debug("Failed to acknowledge journal entry #" + sequence + ": " + e);
+        }
+    }
+
+}
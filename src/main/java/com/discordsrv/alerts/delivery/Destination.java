@@ -0,0 +1,139 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.delivery;
+
+import com.discordsrv.alerts.delivery.sink.SinkManager;
+import github.scarsz.discordsrv.dependencies.jda.api.entities.TextChannel;
+
+import java.util.Objects;
+
+/**
+ * Where an alert is delivered to: a Discord text channel (through DiscordSRV), a webhook url or a sink
+ * (an NDJSON file or an HTTP endpoint, see {@link SinkManager})
+ */
+public final class Destination {
+
+    private final TextChannel channel;
+    private final String webhookUrl;
+    private final String sink;
+
+    private Destination(TextChannel channel, String webhookUrl, String sink) {
+        this.channel = channel;
+        this.webhookUrl = webhookUrl;
+        this.sink = sink;
+    }
+
+    public static Destination channel(TextChannel channel) {
+        return new Destination(Objects.requireNonNull(channel), null, null);
+    }
+
+    public static Destination webhook(String webhookUrl) {
+        return new Destination(null, Objects.requireNonNull(webhookUrl), null);
+    }
+
+    /**
+     * @param target the sink target, "ndjson:&lt;name&gt;" or "post:&lt;url&gt;"
+     */
+    public static Destination sink(String target) {
+        return new Destination(null, null, Objects.requireNonNull(target));
+    }
+
+    public static boolean isWebhookUrl(String target) {
+        return target.startsWith("https://") || target.startsWith("http://");
+    }
+
+    public static boolean isSinkTarget(String target) {
+        return target.startsWith(SinkManager.NDJSON_PREFIX) || target.startsWith(SinkManager.POST_PREFIX);
+    }
+
+    /**
+     * @return true if the target is the name or id of a Discord channel
+     */
+    public static boolean isChannelTarget(String target) {
+        return !isWebhookUrl(target) && !isSinkTarget(target);
+    }
+
+    public boolean isWebhook() {
+        return webhookUrl != null;
+    }
+
+    public boolean isSink() {
+        return sink != null;
+    }
+
+    /**
+     * @return the sink target, null for other destinations
+     */
+    public String getSink() {
+        return sink;
+    }
+
+    /**
+     * @return the text channel, null for webhook & sink destinations
+     */
+    public TextChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return the webhook url, null for channel destinations
+     */
+    public String getWebhookUrl() {
+        return webhookUrl;
+    }
+
+    /**
+     * @return a String uniquely identifying this destination
+     */
+    public String getKey() {
+        if (channel != null) return "channel:" + channel.getId();
+        return webhookUrl != null ? "webhook:" + webhookUrl : "sink:" + sink;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return getKey().equals(((Destination) o).getKey());
+    }
+
+    @Override
+    public int hashCode() {
+        return getKey().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        if (channel != null) return "#" + channel.getName();
+        return describe(getKey());
+    }
+
+    /**
+     * @param key a destination {@link #getKey() key}
+     * @return a description of the destination that's safe to log, without the webhook token
+     */
+    public static String describe(String key) {
+        // don't leak the webhook token into logs
+        if (key.startsWith("webhook:")) return "webhook " + key.substring("webhook:".length()).replaceAll("/[\\w-]+$", "/<token>");
+        if (key.startsWith("channel:")) return "channel " + key.substring("channel:".length());
+        if (key.startsWith("sink:")) return "sink " + key.substring("sink:".length());
+        return key;
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.delivery;
+
+import com.discordsrv.alerts.util.WeightedQueues;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands the threads of the delivery pool to lanes that have messages to deliver. Lanes wait for a thread in a queue per
+ * priority, a free thread takes the next lane by weight, so busy low priority lanes can't hold up high priority ones
+ * and still get their share of the pool.
+ */
+public class LaneScheduler {
+
+    private final ScheduledExecutorService executor;
+    private final WeightedQueues<DeliveryLane> ready = new WeightedQueues<>();
+
+    public LaneScheduler(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Give the lane a turn on the next free thread
+     *
+     * @throws RejectedExecutionException if the pool is shutting down
+     */
+    public void submit(DeliveryLane lane) {
+        synchronized (ready) {
+            ready.add(lane.getPriority(), lane);
+        }
+        // one task per ready lane, which lane a task runs is only decided once it gets a thread
+        executor.execute(this::runNext);
+    }
+
+    /**
+     * Give the lane a turn once the delay has passed
+     *
+     * @throws RejectedExecutionException if the pool is shutting down
+     */
+    public void schedule(DeliveryLane lane, long delayMillis) {
+        executor.schedule(() -> {
+            try {
+                submit(lane);
+            } catch (RejectedExecutionException ignored) {
+                // shutting down
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void runNext() {
+        DeliveryLane lane;
+        synchronized (ready) {
+            lane = ready.poll();
+        }
+        if (lane != null) lane.run();
+    }
+
+}
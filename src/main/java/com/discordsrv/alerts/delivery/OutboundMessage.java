@@ -0,0 +1,175 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.delivery;
+
+import com.discordsrv.alerts.util.MessageFormat;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fully rendered alert on its way to a destination. Only holds plain values, so it can be written to
+ * (and restored from) the delivery journal.
+ */
+public final class OutboundMessage {
+
+    private static final byte VERSION = 1;
+
+    private final long createdMillis;
+    private final String alertName;
+    private final String destinationKey;
+    private final MessageFormat message;
+
+    public OutboundMessage(String alertName, Destination destination, MessageFormat message) {
+        this(System.currentTimeMillis(), alertName, destination.getKey(), message);
+    }
+
+    private OutboundMessage(long createdMillis, String alertName, String destinationKey, MessageFormat message) {
+        this.createdMillis = createdMillis;
+        this.alertName = alertName;
+        this.destinationKey = destinationKey;
+        this.message = message;
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    public String getAlertName() {
+        return alertName;
+    }
+
+    /**
+     * @see Destination#getKey()
+     */
+    public String getDestinationKey() {
+        return destinationKey;
+    }
+
+    /**
+     * @return the rendered message, placeholders have already been replaced
+     */
+    public MessageFormat getMessage() {
+        return message;
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeLong(createdMillis);
+            writeString(out, alertName);
+            writeString(out, destinationKey);
+
+            writeString(out, message.getContent());
+            writeString(out, message.getAuthorName());
+            writeString(out, message.getAuthorUrl());
+            writeString(out, message.getAuthorImageUrl());
+            writeString(out, message.getThumbnailUrl());
+            writeString(out, message.getTitle());
+            writeString(out, message.getTitleUrl());
+            writeString(out, message.getDescription());
+            writeString(out, message.getImageUrl());
+            writeString(out, message.getFooterText());
+            writeString(out, message.getFooterIconUrl());
+            out.writeLong(message.getTimestamp() != null ? message.getTimestamp().toEpochMilli() : Long.MIN_VALUE);
+            out.writeBoolean(message.getColor() != null);
+            if (message.getColor() != null) out.writeInt(message.getColor().getRGB());
+            List<MessageFormat.Field> fields = message.getFields();
+            out.writeInt(fields != null ? fields.size() : -1);
+            if (fields != null) {
+                for (MessageFormat.Field field : fields) {
+                    writeString(out, field.getTitle());
+                    writeString(out, field.getValue());
+                    out.writeBoolean(field.isInline());
+                }
+            }
+            out.writeBoolean(message.isUseWebhooks());
+            writeString(out, message.getWebhookName());
+            writeString(out, message.getWebhookAvatarUrl());
+            writeString(out, message.getWebhookUrl());
+        } catch (IOException e) {
+            // can't happen with a ByteArrayOutputStream
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static OutboundMessage fromBytes(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        byte version = in.readByte();
+        if (version != VERSION) throw new IOException("Unsupported message version " + version);
+        long createdMillis = in.readLong();
+        String alertName = readString(in);
+        String destinationKey = readString(in);
+
+        MessageFormat message = new MessageFormat();
+        message.setContent(readString(in));
+        message.setAuthorName(readString(in));
+        message.setAuthorUrl(readString(in));
+        message.setAuthorImageUrl(readString(in));
+        message.setThumbnailUrl(readString(in));
+        message.setTitle(readString(in));
+        message.setTitleUrl(readString(in));
+        message.setDescription(readString(in));
+        message.setImageUrl(readString(in));
+        message.setFooterText(readString(in));
+        message.setFooterIconUrl(readString(in));
+        long timestamp = in.readLong();
+        if (timestamp != Long.MIN_VALUE) message.setTimestamp(Instant.ofEpochMilli(timestamp));
+        if (in.readBoolean()) message.setColor(new Color(in.readInt(), true));
+        int fieldCount = in.readInt();
+        if (fieldCount >= 0) {
+            List<MessageFormat.Field> fields = new ArrayList<>(fieldCount);
+            for (int i = 0; i < fieldCount; i++) {
+                fields.add(new MessageFormat.Field(readString(in), readString(in), in.readBoolean()));
+            }
+            message.setFields(fields);
+        }
+        message.setUseWebhooks(in.readBoolean());
+        message.setWebhookName(readString(in));
+        message.setWebhookAvatarUrl(readString(in));
+        message.setWebhookUrl(readString(in));
+        return new OutboundMessage(createdMillis, alertName, destinationKey, message);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // writeUTF is limited to 64KB, embeds can get close to that
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
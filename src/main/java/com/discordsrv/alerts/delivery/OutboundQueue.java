@@ -0,0 +1,280 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.delivery;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * A FIFO queue of rendered alerts with a byte budget. Messages that don't fit in the budget are written to an
+ * overflow file and read back, in order, as the in-memory part of the queue drains.
+ *
+ * Sizes are the serialized size of the messages, which is close to (but not exactly) what they take up on the heap.
+ * Several queues can share one {@link Budget}, a queue always keeps at least its first message in memory.
+ */
+public class OutboundQueue {
+
+    private final File overflowFile;
+    private final Budget budget;
+    private final BiConsumer<List<String>, IOException> lost;
+
+    // all guarded by this
+    private final Deque<Entry> memory = new ArrayDeque<>();
+    private long memoryBytes = 0;
+    private DataOutputStream overflowOut;
+    private DataInputStream overflowIn;
+    private int spilled = 0;
+    // the alert names of the spilled messages, in order, so it's known which alerts they were if they can't be read back
+    private final Deque<String> spilledAlerts = new ArrayDeque<>();
+    private boolean closed = false;
+
+    public OutboundQueue(File overflowFile, long budget, BiConsumer<List<String>, IOException> lost) {
+        this(overflowFile, new Budget(budget), lost);
+    }
+
+    /**
+     * @param overflowFile the file messages that don't fit in the budget are spilled to
+     * @param budget the memory budget
+     * @param lost called with the alert names of the spilled messages, if the overflow file couldn't be read back
+     */
+    public OutboundQueue(File overflowFile, Budget budget, BiConsumer<List<String>, IOException> lost) {
+        this.overflowFile = overflowFile;
+        this.budget = budget;
+        this.lost = lost;
+    }
+
+    /**
+     * Add a message to the end of the queue
+     *
+     * @param entry the message
+     * @param bytes the serialized message, see {@link OutboundMessage#toBytes()}
+     * @throws IOException if the message had to be spilled but the overflow file couldn't be written
+     */
+    public synchronized void offer(Entry entry, byte[] bytes) throws IOException {
+        if (closed) throw new IOException("The queue is closed");
+        entry.size = bytes.length;
+        // once anything is spilled, everything after it has to be spilled too to keep the order
+        if (spilled == 0 && acquire(entry.size)) {
+            memory.addLast(entry);
+            memoryBytes += entry.size;
+        } else {
+            spill(entry, bytes);
+        }
+    }
+
+    /**
+     * Take the first message of the queue without waiting
+     *
+     * @return the message, null if the queue is empty or closed
+     */
+    public synchronized Entry poll() {
+        Entry entry = memory.pollFirst();
+        if (entry == null) return null;
+        memoryBytes -= entry.size;
+        budget.release(entry.size);
+        unspill();
+        return entry;
+    }
+
+    /**
+     * Close the queue, dropping whatever is still queued
+     *
+     * @return the amount of messages that were still queued
+     */
+    public synchronized int close() {
+        closed = true;
+        int remaining = memory.size() + spilled;
+        memory.clear();
+        budget.release(memoryBytes);
+        memoryBytes = 0;
+        resetOverflow();
+        return remaining;
+    }
+
+    public synchronized int size() {
+        return memory.size() + spilled;
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public synchronized int getSpilled() {
+        return spilled;
+    }
+
+    private void spill(Entry entry, byte[] bytes) throws IOException {
+        if (overflowOut == null) {
+            overflowOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(overflowFile, false)));
+        }
+        overflowOut.writeInt(bytes.length);
+        overflowOut.writeLong(entry.sequence);
+        overflowOut.writeLong(entry.eventNanos);
+        overflowOut.write(bytes);
+        spilled++;
+        spilledAlerts.addLast(entry.getMessage().getAlertName());
+    }
+
+    private void unspill() {
+        try {
+            while (spilled > 0) {
+                if (overflowIn == null) {
+                    overflowOut.flush();
+                    overflowIn = new DataInputStream(new BufferedInputStream(new FileInputStream(overflowFile)));
+                }
+                overflowOut.flush();
+
+                // peek at the size without consuming the record
+                overflowIn.mark(4);
+                int size = overflowIn.readInt();
+                if (!acquire(size)) {
+                    overflowIn.reset();
+                    break;
+                }
+
+                Entry entry;
+                try {
+                    long sequence = overflowIn.readLong();
+                    long eventNanos = overflowIn.readLong();
+                    byte[] bytes = new byte[size];
+                    overflowIn.readFully(bytes);
+                    entry = new Entry(OutboundMessage.fromBytes(bytes), eventNanos, sequence);
+                } catch (IOException e) {
+                    // this message is lost along with the rest
+                    budget.release(size);
+                    throw e;
+                }
+                spilled--;
+                spilledAlerts.pollFirst();
+                entry.size = size;
+                memory.addLast(entry);
+                memoryBytes += size;
+            }
+        } catch (IOException e) {
+            // the overflow file is unusable, whatever is left in it is gone (but still in the journal, if enabled)
+            List<String> alertNames = new ArrayList<>(spilledAlerts);
+            resetOverflow();
+            lost.accept(alertNames, e);
+            return;
+        }
+        if (spilled == 0) resetOverflow();
+    }
+
+    private boolean acquire(int size) {
+        if (memory.isEmpty()) {
+            budget.acquire(size);
+            return true;
+        }
+        return budget.tryAcquire(size);
+    }
+
+    private void resetOverflow() {
+        closeQuietly(overflowOut);
+        closeQuietly(overflowIn);
+        overflowOut = null;
+        overflowIn = null;
+        spilled = 0;
+        spilledAlerts.clear();
+        try {
+            Files.deleteIfExists(overflowFile.toPath());
+        } catch (IOException ignored) {}
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * A memory budget in bytes, shared by one or more queues
+     */
+    public static final class Budget {
+
+        private final long limit;
+        private final AtomicLong used = new AtomicLong();
+
+        public Budget(long limit) {
+            this.limit = limit;
+        }
+
+        public long getUsed() {
+            return used.get();
+        }
+
+        private boolean tryAcquire(long bytes) {
+            long current;
+            do {
+                current = used.get();
+                if (current + bytes > limit) return false;
+            } while (!used.compareAndSet(current, current + bytes));
+            return true;
+        }
+
+        private void acquire(long bytes) {
+            used.addAndGet(bytes);
+        }
+
+        private void release(long bytes) {
+            used.addAndGet(-bytes);
+        }
+    }
+
+    /**
+     * A queued message
+     */
+    public static final class Entry {
+
+        private final OutboundMessage message;
+        private final long eventNanos;
+        private final long sequence;
+        private int size;
+
+        /**
+         * @param message the message
+         * @param eventNanos the {@link System#nanoTime()} of when the triggering event was received
+         * @param sequence the journal sequence, -1 if the message wasn't journaled
+         */
+        public Entry(OutboundMessage message, long eventNanos, long sequence) {
+            this.message = message;
+            this.eventNanos = eventNanos;
+            this.sequence = sequence;
+        }
+
+        public OutboundMessage getMessage() {
+            return message;
+        }
+
+        public long getEventNanos() {
+            return eventNanos;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.delivery;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.alert.Priority;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts messages to Discord webhook urls, waiting out rate limits when Discord responds with 429.
+ * The rate limit of every url is tracked from Discord's headers, once it's used up senders wait for it to reset and
+ * the reset budget goes to the highest priority sender waiting for the url first.
+ */
+public class WebhookSender {
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final int CONNECT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(10);
+    private static final int READ_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(30);
+
+    private final Alerts plugin;
+    private final String userAgent;
+    private final Map<String, RateLimit> rateLimits = new ConcurrentHashMap<>();
+
+    public enum Result {
+        DELIVERED,
+        FAILED,
+        /**
+         * The webhook responded with 404, it was most likely deleted
+         */
+        NOT_FOUND
+    }
+
+    public WebhookSender(Alerts plugin) {
+        this.plugin = plugin;
+        this.userAgent = "Alerts (https://github.com/DiscordSRV/Alerts, " + plugin.getDescription().getVersion() + ")";
+    }
+
+    /**
+     * Send the given payload to the webhook with normal priority, blocking until it was delivered or failed
+     *
+     * @param webhookUrl the webhook url
+     * @param json the webhook message json
+     * @return true if the message was delivered
+     */
+    public boolean send(String webhookUrl, String json) {
+        return send(webhookUrl, json, Priority.NORMAL) == Result.DELIVERED;
+    }
+
+    /**
+     * Send the given payload to the webhook, blocking until it was delivered or failed
+     *
+     * @param webhookUrl the webhook url
+     * @param json the webhook message json
+     * @param priority the priority of the message, used to decide who goes first once a rate limit resets
+     * @return the outcome
+     */
+    public Result send(String webhookUrl, String json, Priority priority) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        RateLimit rateLimit = rateLimits.computeIfAbsent(webhookUrl, url -> new RateLimit());
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            HttpURLConnection connection = null;
+            try {
+                rateLimit.acquire(priority);
+                connection = (HttpURLConnection) new URL(webhookUrl).openConnection();
+                connection.setRequestMethod("POST");
+                connection.setConnectTimeout(CONNECT_TIMEOUT);
+                connection.setReadTimeout(READ_TIMEOUT);
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                connection.setRequestProperty("User-Agent", userAgent);
+                connection.setFixedLengthStreamingMode(body.length);
+                try (OutputStream outputStream = connection.getOutputStream()) {
+                    outputStream.write(body);
+                }
+
+                int status = connection.getResponseCode();
+                rateLimit.update(connection.getHeaderField("X-RateLimit-Remaining"), connection.getHeaderField("X-RateLimit-Reset-After"));
+                if (status >= 200 && status < 300) {
+                    drain(connection.getInputStream());
+                    return Result.DELIVERED;
+                }
+                drain(connection.getErrorStream());
+
+                if (status == 429) {
+                    long retryAfter = getRetryAfterMillis(connection);
+                    plugin.debug("Rate limited by webhook, retrying in " + retryAfter + "ms (attempt " + attempt + "/" + MAX_ATTEMPTS + ")");
+                    rateLimit.limit(retryAfter);
+                    continue;
+                }
+
+                plugin.debug("Webhook responded with HTTP " + status + ", not retrying");
+                return status == 404 ? Result.NOT_FOUND : Result.FAILED;
+            } catch (IOException e) {
+                plugin.debug("Failed to send webhook message (attempt " + attempt + "/" + MAX_ATTEMPTS + "): " + e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Result.FAILED;
+            } finally {
+                if (connection != null) connection.disconnect();
+            }
+        }
+        return Result.FAILED;
+    }
+
+    private long getRetryAfterMillis(HttpURLConnection connection) {
+        // X-RateLimit-Reset-After has millisecond precision, Retry-After only seconds
+        String resetAfter = connection.getHeaderField("X-RateLimit-Reset-After");
+        if (resetAfter == null) resetAfter = connection.getHeaderField("Retry-After");
+        if (resetAfter != null) {
+            try {
+                return Math.max(0, (long) Math.ceil(Double.parseDouble(resetAfter.trim()) * 1000));
+            } catch (NumberFormatException ignored) {}
+        }
+        return TimeUnit.SECONDS.toMillis(1);
+    }
+
+    private void drain(InputStream inputStream) throws IOException {
+        // reading the whole response lets the connection be reused
+        if (inputStream == null) return;
+        try (InputStream stream = inputStream) {
+            byte[] buffer = new byte[1024];
+            //noinspection StatementWithEmptyBody
+            while (stream.read(buffer) != -1);
+        }
+    }
+
+    /**
+     * The rate limit of one webhook url
+     */
+    private static final class RateLimit {
+
+        private static final int UNKNOWN = Integer.MAX_VALUE;
+
+        // guarded by this
+        private int remaining = UNKNOWN;
+        private long resetAt = 0;
+        private final int[] waiting = new int[Priority.values().length];
+
+        /**
+         * Wait until a request may be made, senders of a higher priority that are waiting as well go first
+         */
+        private synchronized void acquire(Priority priority) throws InterruptedException {
+            waiting[priority.ordinal()]++;
+            try {
+                while (true) {
+                    long wait = getWaitMillis();
+                    if (wait == 0 && !isHigherWaiting(priority)) break;
+                    // woken up early when a higher priority sender got its turn
+                    wait(wait > 0 ? wait : 50);
+                }
+                if (remaining != UNKNOWN) remaining--;
+            } finally {
+                waiting[priority.ordinal()]--;
+                notifyAll();
+            }
+        }
+
+        private long getWaitMillis() {
+            if (remaining > 0) return 0;
+            long wait = resetAt - System.currentTimeMillis();
+            if (wait > 0) return wait;
+            remaining = UNKNOWN;
+            return 0;
+        }
+
+        private boolean isHigherWaiting(Priority priority) {
+            for (int i = 0; i < priority.ordinal(); i++) {
+                if (waiting[i] > 0) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Update the rate limit from the headers of a response
+         */
+        private synchronized void update(String remainingHeader, String resetAfterHeader) {
+            if (remainingHeader == null || resetAfterHeader == null) return;
+            try {
+                remaining = Integer.parseInt(remainingHeader.trim());
+                resetAt = System.currentTimeMillis() + (long) Math.ceil(Double.parseDouble(resetAfterHeader.trim()) * 1000);
+            } catch (NumberFormatException ignored) {}
+        }
+
+        /**
+         * Don't make requests for the given time, after a 429
+         */
+        private synchronized void limit(long millis) {
+            remaining = 0;
+            resetAt = Math.max(resetAt, System.currentTimeMillis() + millis);
+        }
+
+    }
+
+}
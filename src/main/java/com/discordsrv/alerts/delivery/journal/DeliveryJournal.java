@@ -0,0 +1,310 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.delivery.journal;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.delivery.OutboundMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An append only, segmented, memory mapped journal of outbound messages.
+ * Every message is appended before it's sent and acknowledged once delivered, messages that were never acknowledged
+ * (because the server stopped or crashed first) are recovered when the journal is opened.
+ *
+ * Acknowledgements are appended to the newest segment. Old segments are removed by {@link #compact()} once all their
+ * entries are acknowledged, entries still pending in them are copied forward into the newest segment first.
+ */
+public class DeliveryJournal {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+    private static final byte[] EMPTY = new byte[0];
+
+    public enum Fsync {
+        /** force every record to disk before returning, safest & slowest */
+        ALWAYS,
+        /** force periodically with {@link #force()} */
+        INTERVAL,
+        /** leave flushing to the operating system, survives the server crashing but not the machine */
+        NEVER
+    }
+
+    private final Alerts plugin;
+    private final File directory;
+    private final int segmentSize;
+    private final Fsync fsync;
+
+    // all guarded by this
+    private final List<JournalSegment> segments = new ArrayList<>();
+    private final Map<Long, Location> pending = new LinkedHashMap<>();
+    private final List<OutboundEntry> recovered = new ArrayList<>();
+    private JournalSegment active;
+    private long nextSequence = 1;
+    private long nextSegmentId = 1;
+    private boolean dirty = false;
+
+    public DeliveryJournal(Alerts plugin, File directory, int segmentSize, Fsync fsync) {
+        this.plugin = plugin;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Open the journal, reading back all unacknowledged entries
+     *
+     * @throws IOException if the journal directory can't be used
+     */
+    public synchronized void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+
+        TreeMap<Long, File> files = new TreeMap<>();
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File file : children) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+                if (matcher.matches()) files.put(Long.parseLong(matcher.group(1)), file);
+            }
+        }
+
+        Map<Long, byte[]> payloads = new HashMap<>();
+        for (Map.Entry<Long, File> entry : files.entrySet()) {
+            JournalSegment segment;
+            try {
+                segment = JournalSegment.open(entry.getValue(), entry.getKey());
+            } catch (IOException e) {
+                plugin.error("Skipping unreadable journal segment " + entry.getValue().getName() + " -> " + e.getMessage());
+                continue;
+            }
+            segments.add(segment);
+            nextSegmentId = Math.max(nextSegmentId, entry.getKey() + 1);
+            segment.scan((type, sequence, position, payload) -> {
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                if (type == JournalSegment.TYPE_ENTRY) {
+                    // a later copy (from compaction) replaces the earlier one
+                    pending.put(sequence, new Location(segment, position));
+                    payloads.put(sequence, payload);
+                } else if (type == JournalSegment.TYPE_ACK) {
+                    pending.remove(sequence);
+                    payloads.remove(sequence);
+                }
+            });
+        }
+
+        List<Long> sequences = new ArrayList<>(pending.keySet());
+        Collections.sort(sequences);
+        for (long sequence : sequences) {
+            try {
+                recovered.add(new OutboundEntry(sequence, OutboundMessage.fromBytes(payloads.get(sequence))));
+            } catch (IOException e) {
+                plugin.error("Dropping unreadable journal entry #" + sequence + " -> " + e.getMessage());
+                pending.remove(sequence);
+            }
+        }
+
+        // never append to recovered segments, whatever follows their last valid record is unknown
+        active = newSegment(segmentSize);
+        compact();
+    }
+
+    /**
+     * @return the entries that were still unacknowledged when the journal was opened, oldest first.
+     * They stay pending until acknowledged, but are only returned once.
+     */
+    public synchronized List<OutboundEntry> takeRecovered() {
+        List<OutboundEntry> entries = new ArrayList<>(recovered);
+        recovered.clear();
+        return entries;
+    }
+
+    /**
+     * Append a message
+     *
+     * @return the sequence number to acknowledge the message with
+     */
+    public long append(OutboundMessage message) throws IOException {
+        return append(message.toBytes());
+    }
+
+    /**
+     * Append an already serialized message
+     *
+     * @param payload the message, see {@link OutboundMessage#toBytes()}
+     * @return the sequence number to acknowledge the message with
+     */
+    public long append(byte[] payload) throws IOException {
+        synchronized (this) {
+            long sequence = nextSequence++;
+            int position = write(JournalSegment.TYPE_ENTRY, sequence, payload);
+            pending.put(sequence, new Location(active, position));
+            return sequence;
+        }
+    }
+
+    /**
+     * Mark a message as delivered, it won't be recovered anymore
+     */
+    public synchronized void ack(long sequence) throws IOException {
+        if (pending.remove(sequence) == null) return;
+        write(JournalSegment.TYPE_ACK, sequence, EMPTY);
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Force written records to disk, used with {@link Fsync#INTERVAL}
+     */
+    public synchronized void force() {
+        if (!dirty || active == null) return;
+        active.force();
+        dirty = false;
+    }
+
+    /**
+     * Remove old segments, oldest first: fully acknowledged ones are deleted, pending entries of older ones are copied
+     * into the active segment first. The most recently filled segment keeps its pending entries, those are most
+     * likely still being delivered.
+     *
+     * Segments are only ever removed from the front, a segment holding acknowledgements can't go before the
+     * segments with the entries they acknowledge.
+     */
+    public synchronized void compact() throws IOException {
+        if (active == null) return;
+
+        List<JournalSegment> sealed = new ArrayList<>(segments);
+        sealed.remove(active);
+        for (int i = 0; i < sealed.size(); i++) {
+            JournalSegment segment = sealed.get(i);
+            boolean newest = i == sealed.size() - 1;
+
+            boolean hasPending = false;
+            for (Location location : pending.values()) {
+                if (location.segment == segment) {
+                    hasPending = true;
+                    break;
+                }
+            }
+            if (hasPending && newest) break;
+
+            if (hasPending) {
+                for (Map.Entry<Long, Location> entry : pending.entrySet()) {
+                    Location location = entry.getValue();
+                    if (location.segment != segment) continue;
+
+                    ByteBuffer record = segment.record(location.position);
+                    int position = active.appendRaw(record.duplicate());
+                    if (position == -1) {
+                        roll(record.remaining());
+                        position = active.appendRaw(record.duplicate());
+                    }
+                    entry.setValue(new Location(active, position));
+                }
+                // the copies must be durable before the originals are removed
+                active.force();
+            }
+            segment.delete();
+            segments.remove(segment);
+        }
+    }
+
+    public synchronized void close() {
+        for (JournalSegment segment : segments) {
+            segment.force();
+            segment.close();
+        }
+        segments.clear();
+        active = null;
+    }
+
+    private int write(byte type, long sequence, byte[] payload) throws IOException {
+        if (active == null) throw new IOException("The journal is closed");
+        int position = active.append(type, sequence, payload);
+        if (position == -1) {
+            roll(JournalSegment.RECORD_HEADER + payload.length);
+            position = active.append(type, sequence, payload);
+        }
+
+        if (fsync == Fsync.ALWAYS) {
+            active.force();
+        } else {
+            dirty = true;
+        }
+        return position;
+    }
+
+    private void roll(int recordSize) throws IOException {
+        // the old segment stays until compaction gets rid of it
+        active.force();
+        active = newSegment(Math.max(segmentSize, recordSize + 64));
+    }
+
+    private JournalSegment newSegment(int size) throws IOException {
+        long id = nextSegmentId++;
+        JournalSegment segment = JournalSegment.create(new File(directory, String.format("segment-%012d.log", id)), id, size);
+        segments.add(segment);
+        return segment;
+    }
+
+    private static final class Location {
+
+        private final JournalSegment segment;
+        private final int position;
+
+        private Location(JournalSegment segment, int position) {
+            this.segment = segment;
+            this.position = position;
+        }
+    }
+
+    /**
+     * A recovered journal entry
+     */
+    public static final class OutboundEntry {
+
+        private final long sequence;
+        private final OutboundMessage message;
+
+        private OutboundEntry(long sequence, OutboundMessage message) {
+            this.sequence = sequence;
+            this.message = message;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public OutboundMessage getMessage() {
+            return message;
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.delivery.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * One memory mapped file of the journal. Records are laid out back to back:
+ * <pre>[int length][int crc32][byte type][long sequence][payload]</pre>
+ * where length covers everything after the checksum. Unwritten space is zero, so a length of 0 marks the end.
+ */
+final class JournalSegment {
+
+    static final byte TYPE_ENTRY = 1;
+    static final byte TYPE_ACK = 2;
+
+    private static final int MAGIC = 0x414C4A31; // "ALJ1"
+    private static final int FILE_HEADER = 4;
+    static final int RECORD_HEADER = 4 + 4 + 1 + 8;
+
+    private final long id;
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private boolean closed = false;
+
+    private JournalSegment(long id, File file, MappedByteBuffer buffer) {
+        this.id = id;
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    static JournalSegment create(File file, long id, int size) throws IOException {
+        JournalSegment segment = new JournalSegment(id, file, map(file, size));
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.position(FILE_HEADER);
+        return segment;
+    }
+
+    static JournalSegment open(File file, long id) throws IOException {
+        JournalSegment segment = new JournalSegment(id, file, map(file, (int) file.length()));
+        if (segment.buffer.capacity() < FILE_HEADER || segment.buffer.getInt(0) != MAGIC) {
+            segment.close();
+            throw new IOException(file.getName() + " is not a journal segment");
+        }
+        segment.buffer.position(FILE_HEADER);
+        return segment;
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    long getId() {
+        return id;
+    }
+
+    int remaining() {
+        return buffer.remaining();
+    }
+
+    /**
+     * @return the position of the record, or -1 if it doesn't fit
+     */
+    int append(byte type, long sequence, byte[] payload) {
+        int length = 1 + 8 + payload.length;
+        if (buffer.remaining() < 8 + length) return -1;
+
+        int position = buffer.position();
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(longBytes(sequence));
+        crc.update(payload);
+
+        // the length goes last, a record only becomes visible to recovery once it's complete
+        buffer.position(position + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(type);
+        buffer.putLong(sequence);
+        buffer.put(payload);
+        buffer.putInt(position, length);
+        return position;
+    }
+
+    /**
+     * Copy an already written record (from another segment) into this one
+     *
+     * @return the position of the record, or -1 if it doesn't fit
+     */
+    int appendRaw(ByteBuffer record) {
+        if (buffer.remaining() < record.remaining()) return -1;
+        int position = buffer.position();
+        buffer.put(record);
+        return position;
+    }
+
+    /**
+     * @return a read only view of the complete record at the given position
+     */
+    ByteBuffer record(int position) {
+        ByteBuffer view = buffer.duplicate();
+        int length = view.getInt(position);
+        view.limit(position + 8 + length);
+        view.position(position);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Read every valid record, stopping at the end or the first torn/corrupt record
+     */
+    void scan(RecordVisitor visitor) {
+        ByteBuffer view = buffer.duplicate();
+        int position = FILE_HEADER;
+        while (position + 8 <= view.capacity()) {
+            int length = view.getInt(position);
+            if (length < 9 || position + 8 + length > view.capacity()) break;
+            int checksum = view.getInt(position + 4);
+            byte[] body = new byte[length];
+            view.position(position + 8);
+            view.get(body);
+
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) break;
+
+            ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+            byte type = bodyBuffer.get();
+            long sequence = bodyBuffer.getLong();
+            byte[] payload = new byte[bodyBuffer.remaining()];
+            bodyBuffer.get(payload);
+            visitor.visit(type, sequence, position, payload);
+
+            position += 8 + length;
+        }
+        // leave the position after the last valid record, so remaining() is accurate
+        buffer.position(position);
+    }
+
+    void force() {
+        if (!closed) buffer.force();
+    }
+
+    void close() {
+        if (closed) return;
+        closed = true;
+        unmap(buffer);
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    private static byte[] longBytes(long value) {
+        return ByteBuffer.allocate(8).putLong(value).array();
+    }
+
+    /**
+     * Release the mapping right away instead of waiting for the buffer to be garbage collected,
+     * otherwise the file can't be deleted on Windows
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            // Java 9+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (Throwable ignored) {}
+        try {
+            // Java 8
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+        } catch (Throwable ignored) {}
+    }
+
+    interface RecordVisitor {
+        void visit(byte type, long sequence, int position, byte[] payload);
+    }
+
+    @Override
+    public String toString() {
+        return file.getName();
+    }
+
+}
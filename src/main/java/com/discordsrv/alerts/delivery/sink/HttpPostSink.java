@@ -0,0 +1,53 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.delivery.sink;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.delivery.WebhookSender;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * POSTs records to an HTTP endpoint, one json array per batch
+ */
+public class HttpPostSink extends Sink {
+
+    private final WebhookSender sender;
+    private final String url;
+
+    public HttpPostSink(Alerts plugin, String target, int batchSize, WebhookSender sender, String url) {
+        super(plugin, target, batchSize);
+        this.sender = sender;
+        this.url = url;
+    }
+
+    @Override
+    protected void write(List<String> records) throws IOException {
+        StringBuilder body = new StringBuilder(records.size() * 256).append('[');
+        for (String record : records) {
+            if (body.length() > 1) body.append(',');
+            body.append(record);
+        }
+        body.append(']');
+
+        if (!sender.send(url, body.toString())) throw new IOException("the endpoint didn't accept the batch");
+    }
+
+}
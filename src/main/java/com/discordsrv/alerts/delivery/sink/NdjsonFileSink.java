@@ -0,0 +1,135 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.delivery.sink;
+
+import com.discordsrv.alerts.Alerts;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Appends records to a newline delimited json file, rotating it to name.1.ndjson, name.2.ndjson, ... once it grows too big.
+ * Up to maxFiles rotated files are kept besides the current one
+ */
+public class NdjsonFileSink extends Sink {
+
+    private final File directory;
+    private final String name;
+    private final long maxBytes;
+    private final int maxFiles;
+    private FileOutputStream fileStream;
+    private OutputStream outputStream;
+    private long size;
+
+    public NdjsonFileSink(Alerts plugin, String target, int batchSize, File directory, String name, long maxBytes, int maxFiles) {
+        super(plugin, target, batchSize);
+        this.directory = directory;
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+    }
+
+    @Override
+    protected void write(List<String> records) throws IOException {
+        // rotated before a batch rather than after it, the previous batch is written whether or not this works out
+        if (outputStream != null && size >= maxBytes) {
+            try {
+                rotate();
+            } catch (IOException e) {
+                plugin.error("Failed to rotate " + file(0) + ", appending to it for now -> " + e.getMessage());
+            }
+        }
+        if (outputStream == null) open();
+
+        long start = size;
+        try {
+            for (String record : records) {
+                byte[] bytes = (record + "\n").getBytes(StandardCharsets.UTF_8);
+                outputStream.write(bytes);
+                size += bytes.length;
+            }
+            // one flush (and write syscall) per batch instead of per record
+            outputStream.flush();
+        } catch (IOException e) {
+            discard(start);
+            throw e;
+        }
+    }
+
+    private void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Failed to create " + directory);
+        File file = file(0);
+        fileStream = new FileOutputStream(file, true);
+        outputStream = new BufferedOutputStream(fileStream, 64 * 1024);
+        size = file.length();
+    }
+
+    /**
+     * Drop the stream without flushing it and cut the file back to the given length, so the part of a failed batch
+     * that was already written isn't written again when the batch is retried
+     */
+    private void discard(long length) {
+        try {
+            fileStream.getChannel().truncate(length);
+        } catch (IOException e) {
+            plugin.debug("Failed to truncate " + file(0) + ": " + e);
+        }
+        try {
+            fileStream.close();
+        } catch (IOException e) {
+            plugin.debug("Failed to close " + file(0) + ": " + e);
+        }
+        fileStream = null;
+        outputStream = null;
+        size = 0;
+    }
+
+    private void rotate() throws IOException {
+        close();
+        File oldest = file(maxFiles);
+        if (oldest.exists() && !oldest.delete()) throw new IOException("Failed to delete " + oldest);
+        for (int i = maxFiles - 1; i >= 0; i--) {
+            File file = file(i);
+            if (file.exists() && !file.renameTo(file(i + 1))) throw new IOException("Failed to rotate " + file);
+        }
+    }
+
+    private File file(int index) {
+        return new File(directory, index == 0 ? name + ".ndjson" : name + "." + index + ".ndjson");
+    }
+
+    @Override
+    public void close() {
+        if (outputStream == null) return;
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            plugin.debug("Failed to close " + file(0) + ": " + e);
+        }
+        fileStream = null;
+        outputStream = null;
+        size = 0;
+    }
+
+}
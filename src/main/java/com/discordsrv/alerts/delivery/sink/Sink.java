@@ -0,0 +1,166 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.delivery.sink;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.debug.TraceBuffer;
+import com.discordsrv.alerts.debug.TraceEvent;
+import com.discordsrv.alerts.metrics.AlertMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A destination for rendered alerts other than Discord, records are buffered and written in batches
+ * once {@link #getBatchSize()} of them are waiting or when the {@link SinkManager} flushes periodically
+ */
+public abstract class Sink {
+
+    /**
+     * How many batches worth of records are kept around for retrying while writes fail
+     */
+    private static final int RETRY_BATCHES = 10;
+
+    protected final Alerts plugin;
+    private final String target;
+    private final int batchSize;
+    private final Object flushLock = new Object();
+    private List<Record> buffer = new ArrayList<>();
+
+    protected Sink(Alerts plugin, String target, int batchSize) {
+        this.plugin = plugin;
+        this.target = target;
+        this.batchSize = batchSize;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public synchronized int getBuffered() {
+        return buffer.size();
+    }
+
+    /**
+     * Buffer a record
+     *
+     * @param json the record, a single line of json
+     * @param metrics the metrics of the alert the record is for
+     * @param eventNanos the {@link System#nanoTime()} of when the triggering event was received
+     * @return true if this record filled up the batch and the sink should be flushed
+     */
+    public synchronized boolean add(String json, AlertMetrics metrics, long eventNanos) {
+        buffer.add(new Record(json, metrics, eventNanos));
+        return buffer.size() == batchSize;
+    }
+
+    /**
+     * Write out everything that is buffered in batches, blocking until it was written.
+     * Records that couldn't be written are put back at the front of the buffer and retried on the next flush,
+     * the oldest are given up on once more than {@link #RETRY_BATCHES} batches are waiting.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<Record> records;
+            synchronized (this) {
+                if (buffer.isEmpty()) return;
+                records = buffer;
+                buffer = new ArrayList<>(batchSize);
+            }
+
+            int written = 0;
+            while (written < records.size()) {
+                List<Record> batch = records.subList(written, Math.min(written + batchSize, records.size()));
+                List<String> lines = new ArrayList<>(batch.size());
+                for (Record record : batch) lines.add(record.json);
+                try {
+                    write(lines);
+                } catch (IOException e) {
+                    int remaining = records.size() - written;
+                    plugin.error("Failed to write " + remaining + " alert" + (remaining != 1 ? "s" : "") + " to " + target
+                            + ", retrying on the next flush -> " + e.getMessage());
+                    retry(records.subList(written, records.size()));
+                    return;
+                }
+
+                TraceBuffer trace = plugin.getTraceBuffer();
+                for (Record record : batch) {
+                    if (trace != null) trace.record(TraceEvent.Type.DELIVERED, record.metrics.getName(), target);
+                    plugin.getMetrics().delivered(record.metrics, record.eventNanos);
+                }
+                written += batch.size();
+            }
+        }
+    }
+
+    private void retry(List<Record> failed) {
+        List<Record> dropped;
+        synchronized (this) {
+            List<Record> retained = new ArrayList<>(failed.size() + buffer.size());
+            retained.addAll(failed);
+            retained.addAll(buffer);
+            int excess = retained.size() - batchSize * RETRY_BATCHES;
+            dropped = excess > 0 ? new ArrayList<>(retained.subList(0, excess)) : Collections.emptyList();
+            buffer = excess > 0 ? new ArrayList<>(retained.subList(excess, retained.size())) : retained;
+        }
+        if (dropped.isEmpty()) return;
+
+        plugin.error("Gave up on " + dropped.size() + " alert" + (dropped.size() != 1 ? "s" : "") + " for " + target
+                + ", more than " + RETRY_BATCHES + " batches are waiting to be retried");
+        TraceBuffer trace = plugin.getTraceBuffer();
+        for (Record record : dropped) {
+            if (trace != null) trace.record(TraceEvent.Type.FAILED, record.metrics.getName(), target);
+            record.metrics.failed();
+        }
+    }
+
+    /**
+     * Write a batch of records, only called by one thread at a time
+     *
+     * @param records the records, each a single line of json
+     * @throws IOException if the batch couldn't be written
+     */
+    protected abstract void write(List<String> records) throws IOException;
+
+    /**
+     * Release any resources held by the sink, called after the final flush
+     */
+    public void close() {}
+
+    private static final class Record {
+
+        private final String json;
+        private final AlertMetrics metrics;
+        private final long eventNanos;
+
+        private Record(String json, AlertMetrics metrics, long eventNanos) {
+            this.json = json;
+            this.metrics = metrics;
+            this.eventNanos = eventNanos;
+        }
+
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.delivery.sink;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.delivery.Destination;
+import com.discordsrv.alerts.delivery.OutboundMessage;
+import com.discordsrv.alerts.delivery.WebhookSender;
+import com.discordsrv.alerts.metrics.AlertMetrics;
+import com.discordsrv.alerts.util.DiscordUtil;
+import com.discordsrv.alerts.util.DurationUtil;
+import github.scarsz.configuralize.DynamicConfig;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Owns the sinks alerts can target besides Discord, "ndjson:&lt;name&gt;" appends to logs/&lt;name&gt;.ndjson in the plugin
+ * folder and "post:&lt;url&gt;" POSTs batches to an HTTP endpoint. Sinks are created the first time an alert is
+ * delivered to them and flushed every FlushInterval, or as soon as a full batch is waiting.
+ */
+public class SinkManager {
+
+    public static final String NDJSON_PREFIX = "ndjson:";
+    public static final String POST_PREFIX = "post:";
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final Alerts plugin;
+    private final WebhookSender sender;
+    private final Map<String, Sink> sinks = new ConcurrentHashMap<>();
+    private BukkitTask flushTask;
+    private int batchSize;
+    private File directory;
+    private long maxBytes;
+    private int maxFiles;
+
+    public SinkManager(Alerts plugin, WebhookSender sender) {
+        this.plugin = plugin;
+        this.sender = sender;
+    }
+
+    /**
+     * Check a sink target
+     *
+     * @param target the target of an alert
+     * @return why the target is invalid, null if it's valid or not a sink target
+     */
+    public static String validate(String target) {
+        if (target.startsWith(NDJSON_PREFIX)) {
+            String name = target.substring(NDJSON_PREFIX.length());
+            return NAME_PATTERN.matcher(name).matches() ? null : "file sink names may only contain letters, digits, _ and -";
+        }
+        if (target.startsWith(POST_PREFIX)) {
+            return Destination.isWebhookUrl(target.substring(POST_PREFIX.length())) ? null : "expected an http(s) url after post:";
+        }
+        return null;
+    }
+
+    public void start() {
+        DynamicConfig config = plugin.config();
+        batchSize = Math.max(1, config.getOptionalInt("Sinks.BatchSize").orElse(100));
+        directory = new File(plugin.getDataFolder(), config.getOptionalString("Sinks.File.Directory").orElse("logs"));
+        maxBytes = Math.max(1, config.getOptionalInt("Sinks.File.MaxSizeMb").orElse(16)) * 1024L * 1024L;
+        maxFiles = Math.max(1, config.getOptionalInt("Sinks.File.MaxFiles").orElse(5));
+
+        long interval = DurationUtil.parseMillis(config.getOptionalString("Sinks.FlushInterval").orElse(null), TimeUnit.SECONDS.toMillis(1));
+        long ticks = Math.max(1, interval / 50);
+        flushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::flushAll, ticks, ticks);
+        plugin.getMetrics().registerGauge("sink_buffered", () -> sinks.values().stream().mapToInt(Sink::getBuffered).sum());
+    }
+
+    public void stop() {
+        if (flushTask != null) flushTask.cancel();
+        flushTask = null;
+        flushAll();
+        sinks.values().forEach(Sink::close);
+        sinks.clear();
+    }
+
+    /**
+     * Buffer a rendered alert for a sink destination
+     *
+     * @param destination the sink destination
+     * @param message the rendered message
+     * @param metrics the metrics of the alert
+     * @param eventNanos the {@link System#nanoTime()} of when the triggering event was received
+     */
+    public void deliver(Destination destination, OutboundMessage message, AlertMetrics metrics, long eventNanos) {
+        Sink sink = sinks.computeIfAbsent(destination.getSink(), this::create);
+        if (sink == null) {
+            metrics.failed();
+            plugin.debug("Dropping alert for " + destination + ": not a valid sink");
+            return;
+        }
+
+        StringBuilder json = new StringBuilder(256).append("{\"time\":");
+        DiscordUtil.quote(json, DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(message.getCreatedMillis())));
+        json.append(",\"alert\":");
+        DiscordUtil.quote(json, message.getAlertName());
+        json.append(",\"message\":").append(DiscordUtil.toWebhookJson(message.getMessage())).append('}');
+
+        if (sink.add(json.toString(), metrics, eventNanos)) {
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, sink::flush);
+        }
+    }
+
+    private Sink create(String target) {
+        if (validate(target) != null) return null;
+        if (target.startsWith(NDJSON_PREFIX)) {
+            String name = target.substring(NDJSON_PREFIX.length());
+            return new NdjsonFileSink(plugin, target, batchSize, directory, name, maxBytes, maxFiles);
+        }
+        if (target.startsWith(POST_PREFIX)) {
+            return new HttpPostSink(plugin, target, batchSize, sender, target.substring(POST_PREFIX.length()));
+        }
+        return null;
+    }
+
+    private void flushAll() {
+        for (Sink sink : sinks.values()) sink.flush();
+    }
+
+}
@@ -31,25 +31,128 @@ import github.scarsz.discordsrv.dependencies.jda.api.hooks.EventListener;
 import github.scarsz.discordsrv.util.DiscordUtil;
 
 import javax.annotation.Nonnull;
-import java.util.List;
+import java.io.File;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 public class DiscordSRVHook implements EventListener {
 
+    private static final String EVENTS_PACKAGE = GenericEvent.class.getPackage().getName().replace('.', '/') + "/";
+    private static Set<String> eventNames;
+
     private final Alerts plugin;
+    private final CountDownLatch ready = new CountDownLatch(1);
+
+    // the lower case simple names of the JDA events alerts trigger on, with a per class cache of the lookup
+    private volatile Set<String> forwardedNames = Collections.emptySet();
+    private volatile Map<Class<?>, Boolean> forwardedClasses = new ConcurrentHashMap<>();
+    private boolean listening = false;
 
     public DiscordSRVHook(Alerts plugin) {
         this.plugin = plugin;
+    }
+
+    public void register() {
         DiscordSRV.api.subscribe(this);
     }
 
     @Subscribe
     @SuppressWarnings("unused")
     public void onDiscordSRVReady(DiscordReadyEvent event) {
-        DiscordUtil.getJda().addEventListener(this);
+        // channels resolved before now may belong to a previous connection
+        AlertListener listener = plugin.getListener();
+        if (listener != null) listener.getSnapshot().invalidateDestinations();
+        ready.countDown();
+        updateRegistration();
+    }
+
+    /**
+     * Only forward the JDA events that are in the given triggers, stop listening to JDA entirely if there are none
+     *
+     * @param triggers the lower case triggers of all alerts
+     */
+    public void setTriggers(Set<String> triggers) {
+        Set<String> names = new HashSet<>();
+        Set<String> knownEvents = getEventNames();
+        for (String trigger : triggers) {
+            if (trigger.startsWith("/")) continue;
+            // when the JDA events couldn't be listed, forward anything that could be one
+            if (knownEvents == null || knownEvents.contains(trigger)) names.add(trigger);
+        }
+        // names first, anyone seeing the new (empty) cache must also see the new names
+        forwardedNames = names;
+        forwardedClasses = new ConcurrentHashMap<>();
+        updateRegistration();
+    }
+
+    private synchronized void updateRegistration() {
+        if (ready.getCount() > 0) return;
+        JDA jda = getJDA();
+        if (jda == null) return;
+
+        boolean listen = !forwardedNames.isEmpty();
+        if (listen && !listening) {
+            jda.addEventListener(this);
+        } else if (!listen && listening) {
+            jda.removeEventListener(this);
+        }
+        listening = listen;
+    }
+
+    /**
+     * @return the lower case simple names of all JDA events, null if they couldn't be listed
+     */
+    private static synchronized Set<String> getEventNames() {
+        if (eventNames != null) return eventNames.isEmpty() ? null : eventNames;
+
+        Set<String> names = new HashSet<>();
+        try {
+            URL location = GenericEvent.class.getProtectionDomain().getCodeSource().getLocation();
+            try (JarFile jar = new JarFile(new File(location.toURI()))) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    if (!name.startsWith(EVENTS_PACKAGE) || !name.endsWith("Event.class") || name.contains("$")) continue;
+                    String simpleName = name.substring(name.lastIndexOf('/') + 1, name.length() - ".class".length());
+                    names.add(simpleName.toLowerCase(Locale.ROOT));
+                }
+            }
+        } catch (Exception ignored) {
+            names.clear();
+        }
+        eventNames = names;
+        return names.isEmpty() ? null : names;
+    }
+
+    /**
+     * Wait for DiscordSRV to be connected to Discord
+     *
+     * @return true if it's ready, false if it didn't get ready in time
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) {
+        try {
+            return ready.await(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
     @Override
     public void onEvent(@Nonnull GenericEvent genericEvent) {
+        Map<Class<?>, Boolean> forwardedClasses = this.forwardedClasses;
+        Boolean forward = forwardedClasses.get(genericEvent.getClass());
+        if (forward == null) {
+            forward = forwardedNames.contains(genericEvent.getClass().getSimpleName().toLowerCase(Locale.ROOT));
+            forwardedClasses.put(genericEvent.getClass(), forward);
+        }
+        if (!forward) return;
+
         AlertListener listener = plugin.getListener();
         if (listener != null) {
             listener.runAlertsForEvent(genericEvent);
@@ -18,20 +18,32 @@
 
 package com.discordsrv.alerts.listener;
 
-import alexh.weak.Dynamic;
-import alexh.weak.Weak;
 import com.discordsrv.alerts.Alerts;
-import com.discordsrv.alerts.collection.ExpiringDualHashBidiMap;
+import com.discordsrv.alerts.alert.Alert;
+import com.discordsrv.alerts.alert.AlertSnapshot;
+import com.discordsrv.alerts.alert.TriggerIndex;
+import com.discordsrv.alerts.condition.CompiledChain;
+import com.discordsrv.alerts.condition.CompiledCondition;
+import com.discordsrv.alerts.condition.Condition;
+import com.discordsrv.alerts.debug.TraceBuffer;
+import com.discordsrv.alerts.debug.TraceEvent;
+import com.discordsrv.alerts.delivery.CircuitBreaker;
+import com.discordsrv.alerts.delivery.Destination;
+import com.discordsrv.alerts.delivery.OutboundMessage;
 import com.discordsrv.alerts.hook.DiscordSRVHook;
+import com.discordsrv.alerts.metrics.AlertMetrics;
+import com.discordsrv.alerts.metrics.AlertProfile;
+import com.discordsrv.alerts.metrics.CacheMetrics;
+import com.discordsrv.alerts.metrics.KeyDigest;
+import com.discordsrv.alerts.rate.RateCounters;
+import com.discordsrv.alerts.rate.RateThreshold;
 import com.discordsrv.alerts.util.*;
+import github.scarsz.configuralize.DynamicConfig;
 import github.scarsz.discordsrv.DiscordSRV;
 import github.scarsz.discordsrv.dependencies.jda.api.entities.Guild;
-import github.scarsz.discordsrv.dependencies.jda.api.entities.Message;
 import github.scarsz.discordsrv.dependencies.jda.api.entities.TextChannel;
 import github.scarsz.discordsrv.objects.Lag;
 import github.scarsz.discordsrv.util.DiscordUtil;
-import github.scarsz.discordsrv.util.WebhookUtil;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
@@ -41,7 +53,6 @@ import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.bukkit.event.player.PlayerEvent;
 import org.bukkit.event.server.ServerCommandEvent;
 import org.bukkit.plugin.RegisteredListener;
-import org.springframework.expression.ParseException;
 import org.springframework.expression.spel.SpelEvaluationException;
 
 import java.lang.reflect.Field;
@@ -49,32 +60,23 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class AlertListener implements Listener {
 
-    private static final Pattern VALID_CLASS_NAME_PATTERN = Pattern.compile("([\\p{L}_$][\\p{L}\\p{N}_$]*\\.)*[\\p{L}_$][\\p{L}\\p{N}_$]*");
     private static final List<String> BLACKLISTED_CLASS_NAMES = Arrays.asList(
             // Causes issues with logins with some plugins
             "com.destroystokyo.paper.event.player.PlayerHandshakeEvent",
             // Causes the server to synchronize with the main thread & breaks team color on Paper
             "org.bukkit.event.player.PlayerChatEvent"
     );
-    private static final List<String> SYNC_EVENT_NAMES = Arrays.asList(
-            // Needs to be sync because block data will be stale by time async task runs
-            "BlockBreakEvent"
-    );
 
     private static final List<Class<?>> BLACKLISTED_CLASSES = new ArrayList<>();
 
-    private final Map<String, String> validClassNameCache = new ExpiringDualHashBidiMap<>(TimeUnit.MINUTES.toMillis(1));
-    private final Set<String> activeTriggers = new HashSet<>();
-
     static {
         for (String className : BLACKLISTED_CLASS_NAMES) {
             try {
@@ -85,7 +87,13 @@ public class AlertListener implements Listener {
 
     private final Alerts plugin;
     private final RegisteredListener listener;
-    private final List<Dynamic> alerts = new ArrayList<>();
+    private final AtomicInteger pendingAsync = new AtomicInteger();
+    private final SyncAlertQueue syncQueue;
+    private final CacheMetrics destinationCacheMetrics;
+    private volatile AlertSnapshot snapshot = AlertSnapshot.EMPTY;
+    private final Map<Class<?>, String> lowerCaseEventNames = new ConcurrentHashMap<>();
+    private final Set<Class<?>> unregisteredEvents = ConcurrentHashMap.newKeySet();
+    private final Map<Class<?>, Optional<Method>> getPlayerMethods = new ConcurrentHashMap<>();
     private boolean registered = false;
 
     public AlertListener(Alerts plugin) {
@@ -97,6 +105,19 @@ public class AlertListener implements Listener {
                 plugin,
                 false
         );
+        destinationCacheMetrics = plugin.getMetrics().cache("destination");
+        plugin.getMetrics().registerCache("expression", SpELExpressionBuilder.getCacheMetrics());
+        plugin.getMetrics().registerCache("condition_fast_path", CompiledCondition.getMetrics());
+        plugin.getMetrics().registerCache("template_fast_path", CompiledChain.getMetrics());
+        plugin.getMetrics().registerGauge("async_processing", pendingAsync::get);
+        syncQueue = new SyncAlertQueue(plugin);
+        syncQueue.start();
+        plugin.getMetrics().registerGauge("sync_queue", syncQueue::getSize);
+        plugin.getMetrics().registerGauge("sync_queue_lag_ms", syncQueue::getLagMillis);
+    }
+
+    public SyncAlertQueue getSyncQueue() {
+        return syncQueue;
     }
 
     public void register() {
@@ -172,27 +193,61 @@ public class AlertListener implements Listener {
     }
 
     public void reloadAlerts() {
-        validClassNameCache.clear();
-        activeTriggers.clear();
-        alerts.clear();
-        Optional<List<Map<?, ?>>> optionalAlerts = plugin.config().getOptional("Alerts");
-        boolean any = optionalAlerts.isPresent() && !optionalAlerts.get().isEmpty();
+        publish(compile(plugin.config()));
+    }
+
+    /**
+     * Compile the alerts of the given configuration, reusing unchanged alerts of the current snapshot.
+     * This doesn't affect the alerts in use and can be called from any thread.
+     *
+     * @param config the configuration to compile
+     * @return the compiled snapshot, to be passed to {@link #publish(AlertSnapshot)}
+     */
+    public AlertSnapshot compile(DynamicConfig config) {
+        Optional<List<Map<?, ?>>> optionalAlerts = config.getOptional("Alerts");
+        return AlertSnapshot.compile(plugin, config, optionalAlerts.orElse(Collections.emptyList()), snapshot);
+    }
+
+    /**
+     * Start using the given alerts, must be called from the main thread
+     *
+     * @param next the compiled alerts
+     */
+    public void publish(AlertSnapshot next) {
+        // send out whatever was aggregated using the old alerts, their windows can't be continued
+        if (plugin.getAggregator() != null) plugin.getAggregator().flushAll();
+
+        for (String error : next.getErrors()) plugin.error(error);
+        next.resetExpressionBudgets();
+        for (Alert alert : next.getAlerts()) {
+            // only now, a compiled snapshot may still be discarded and the current alerts are using these metrics
+            Alert.Digest digest = alert.getDigest();
+            alert.getMetrics().configureDigest(digest != null ? digest.getTopK() : 0);
+        }
+        if (plugin.getDeliveryService() != null) plugin.getDeliveryService().resetCircuits();
+        if (plugin.getRateCounters() != null) {
+            plugin.getRateCounters().setEnabled(next.getExpressions().stream().anyMatch(expression -> expression.contains("#rate")));
+        }
+        snapshot = next;
+        SpELExpressionBuilder.retainParsed(next.getExpressions());
+        plugin.getDiscordSRVHook().ifPresent(hook -> hook.setTriggers(next.getActiveTriggers()));
+
         if (registered) unregister();
-        if (any) {
+        unregisteredEvents.clear();
+        if (!next.isEmpty()) {
             register();
-            long count = optionalAlerts.get().size();
-            plugin.info(optionalAlerts.get().size() + " alert" + (count > 1 ? "s" : "") + " registered");
-
-            for (Map<?, ?> map : optionalAlerts.get()) {
-                Dynamic alert = Dynamic.from(map);
-                alerts.add(alert);
-                activeTriggers.addAll(getTriggers(alert));
-            }
+            int count = next.getAlerts().size();
+            plugin.info(count + " alert" + (count > 1 ? "s" : "") + " registered"
+                    + (next.getReused() > 0 ? " (" + next.getReused() + " unchanged)" : ""));
         }
     }
 
-    public List<Dynamic> getAlerts() {
-        return alerts;
+    public AlertSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public List<Alert> getAlerts() {
+        return snapshot.getAlerts();
     }
 
     public void unregister() {
@@ -201,176 +256,413 @@ public class AlertListener implements Listener {
     }
 
     public void runAlertsForEvent(Object event) {
-        boolean command = event instanceof PlayerCommandPreprocessEvent || event instanceof ServerCommandEvent;
-
-        boolean active = false;
-        String eventName = getEventName(event);
-        for (String trigger : activeTriggers) {
-            if (command && trigger.startsWith("/")) {
-                active = true;
-                break;
-            } else if (trigger.equals(eventName.toLowerCase())) {
-                active = true;
-                break;
-            }
+        long eventNanos = System.nanoTime();
+        AlertSnapshot snapshot = this.snapshot;
+        TriggerIndex triggerIndex = snapshot.getTriggerIndex();
+
+        String eventName = getLowerCaseEventName(event);
+        List<Alert> eventAlerts = triggerIndex.getEventAlerts(eventName);
+
+        String commandLine = null;
+        if (event instanceof PlayerCommandPreprocessEvent) {
+            commandLine = ((PlayerCommandPreprocessEvent) event).getMessage();
+        } else if (event instanceof ServerCommandEvent) {
+            commandLine = ((ServerCommandEvent) event).getCommand();
         }
-        if (!active) {
-            // remove us from HandlerLists that we don't need (we can do this here, since we have the full class name)
-            if (event instanceof Event) ((Event) event).getHandlers().unregister(this);
+        List<Alert> commandAlerts = commandLine != null ? triggerIndex.getCommandAlerts(commandLine) : null;
+
+        if (eventAlerts == null && commandAlerts == null) {
+            if ((commandLine == null || !triggerIndex.hasCommandTriggers()) && event instanceof Event) {
+                // remove us from HandlerLists that we don't need (we can do this here, since we have the full class name)
+                if (unregisteredEvents.add(event.getClass())) ((Event) event).getHandlers().unregister(this);
+            }
             return;
         }
 
-        for (int i = 0; i < alerts.size(); i++) {
-            Dynamic alert = alerts.get(i);
-            Set<String> triggers = getTriggers(alert);
-            boolean async = true;
+        CommandTokenizer.Command tokenized = commandAlerts != null ? CommandTokenizer.tokenize(commandLine) : null;
+        String commandTrigger = tokenized != null ? "/" + tokenized.getBase() : null;
 
-            Dynamic asyncDynamic = alert.get("Async");
-            if (asyncDynamic.isPresent()) {
-                if (asyncDynamic.convert().intoString().equalsIgnoreCase("false")
-                        || asyncDynamic.convert().intoString().equalsIgnoreCase("no")) {
-                    async = false;
-                }
-            }
+        // counted before dispatching, so the match being processed is part of #rate
+        RateCounters rateCounters = plugin.getRateCounters();
+        if (rateCounters != null && rateCounters.isEnabled()) {
+            Player player = getPlayer(event);
+            UUID key = player != null ? player.getUniqueId() : null;
+            if (eventAlerts != null) rateCounters.record(eventName, key);
+            if (commandTrigger != null) rateCounters.record(commandTrigger, key);
+        }
 
-            outer:
-            for (String syncName : SYNC_EVENT_NAMES) {
-                for (String trigger : triggers) {
-                    if (trigger.equalsIgnoreCase(syncName)) {
-                        async = false;
-                        break outer;
-                    }
-                }
-            }
+        long matchNanos = plugin.isProfiling() ? System.nanoTime() - eventNanos : -1;
+        if (eventAlerts != null) {
+            for (Alert alert : eventAlerts) dispatch(event, alert, eventName, null, eventNanos, matchNanos);
+        }
+        if (commandAlerts != null) {
+            for (Alert alert : commandAlerts) dispatch(event, alert, commandTrigger, tokenized, eventNanos, matchNanos);
+        }
+    }
 
-            if (async) {
-                int alertIndex = i;
-                Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> process(event, alert, triggers, alertIndex));
-            } else {
-                process(event, alert, triggers, i);
+    private void dispatch(Object event, Alert alert, String trigger, CommandTokenizer.Command tokenized, long eventNanos, long matchNanos) {
+        // disabled for going over the expression time budget too often, until alerts are reloaded
+        if (alert.getExpressionBudget().isDisabled()) return;
+
+        Function<String, Object> placeholders = null;
+        RateThreshold rateThreshold = alert.getRateThreshold();
+        if (rateThreshold != null) {
+            // counted right here, only the match that crosses the threshold goes on to be processed
+            placeholders = recordRate(event, alert, rateThreshold, tokenized);
+            if (placeholders == null) return;
+        }
+        Function<String, Object> finalPlaceholders = placeholders;
+
+        if (matchNanos != -1) alert.getMetrics().getProfile().record(AlertProfile.Stage.MATCH, matchNanos);
+        if (alert.isAsync()) {
+            pendingAsync.incrementAndGet();
+            try {
+                plugin.getAlertExecutor().execute(() -> {
+                    pendingAsync.decrementAndGet();
+                    process(event, alert, trigger, tokenized, eventNanos, finalPlaceholders);
+                });
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                pendingAsync.decrementAndGet();
             }
+        } else if (Bukkit.isPrimaryThread()) {
+            // matching is done, the rest may be carried over to a later tick if this tick's budget is used up
+            // (unless the event's data would be stale by then)
+            syncQueue.submit(alert.getPriority(), alert.isDeferrable(), () -> process(event, alert, trigger, tokenized, eventNanos, finalPlaceholders));
+        } else {
+            // async event, there's no tick to budget
+            process(event, alert, trigger, tokenized, eventNanos, finalPlaceholders);
         }
     }
 
-    private Set<String> getTriggers(Dynamic alert) {
-        Set<String> triggers = new HashSet<>();
-        Dynamic triggerDynamic = alert.get("Trigger");
-        if (triggerDynamic.isList()) {
-            triggers.addAll(triggerDynamic.children()
-                    .map(Weak::asString)
-                    .map(String::toLowerCase)
-                    .collect(Collectors.toSet())
-            );
-        } else if (triggerDynamic.isString()) {
-            triggers.add(triggerDynamic.asString().toLowerCase());
-        }
-
-        Set<String> finalTriggers = new HashSet<>();
-        for (String trigger : triggers) {
-            if (!trigger.startsWith("/")) {
-                String className = validClassNameCache.get(trigger);
-                if (className == null) {
-                    // event trigger, make sure it's a valid class name
-                    Matcher matcher = VALID_CLASS_NAME_PATTERN.matcher(trigger);
-                    if (matcher.find()) {
-                        // valid class name found
-                        className = matcher.group();
-                    }
-                    validClassNameCache.put(trigger, className);
+    /**
+     * @return the rate placeholders if this match made the rate cross the alert's threshold, null if the alert shouldn't fire
+     */
+    private Function<String, Object> recordRate(Object event, Alert alert, RateThreshold rateThreshold, CommandTokenizer.Command tokenized) {
+        if (alert.isIgnoreCancelled() && event instanceof Cancellable && ((Cancellable) event).isCancelled()) return null;
+
+        Player player = getPlayer(event);
+        Object key;
+        if (rateThreshold.getKey() == null) {
+            key = player != null ? player.getUniqueId() : "";
+        } else {
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("event", event);
+            variables.put("player", player);
+            variables.put("command", tokenized != null ? tokenized.getCommand() : null);
+            variables.put("args", tokenized != null ? tokenized.getArgs() : Collections.emptyList());
+            variables.put("allArgs", tokenized != null ? tokenized.getAllArgs() : "");
+            variables.put("rate", plugin.getRateCounters());
+            String template = NamedValueFormatter.formatExpressions(rateThreshold.getKey(), event, variables, alert.getExpressionBudget());
+            key = NamedValueFormatter.format(template, placeholder -> {
+                switch (placeholder) {
+                    case "uuid":
+                        return player != null ? player.getUniqueId() : "";
+                    case "name":
+                    case "username":
+                        return player != null ? player.getName() : "";
+                    case "world":
+                        return player != null ? player.getWorld().getName() : "";
+                    default:
+                        return "{" + placeholder + "}";
                 }
-                finalTriggers.add(className);
-                continue;
-            }
-            finalTriggers.add(trigger);
+            });
         }
-        return finalTriggers;
+
+        long rate = rateThreshold.record(key, System.currentTimeMillis());
+        if (rate == -1) return null;
+        if (plugin.isDebug()) plugin.debug("Rate of alert " + alert.getMetrics().getName() + " for " + key + " crossed " + rateThreshold.getCount() + " (" + rate + ")");
+        return placeholder -> rateThreshold.getPlaceholder(placeholder, key, rate);
+    }
+
+    private String getLowerCaseEventName(Object event) {
+        String name = lowerCaseEventNames.get(event.getClass());
+        if (name == null) {
+            name = getEventName(event).toLowerCase();
+            lowerCaseEventNames.put(event.getClass(), name);
+        }
+        return name;
     }
 
     private String getEventName(Object event) {
         return event instanceof Event ? ((Event) event).getEventName() : event.getClass().getSimpleName();
     }
 
-    private void process(Object event, Dynamic alert, Set<String> triggers, int alertIndex) {
-        // TODO remove later pls
-        MessageFormat tempMessageFormat = MessageFormatUtil.getMessageFromConfiguration(plugin.config(), "Alerts." + alertIndex);
-        com.discordsrv.alerts.util.DiscordUtil.sendWebhookMessage(tempMessageFormat, "https://discord.com/api/webhooks/860931721427419156/TCKqXs3y693G4MGjUOYVcLlkK4vvTDMQ-I8TEijgkJvhcCfr3CWpT29vFtp01p9QImLz");
-
-        Player player = event instanceof PlayerEvent ? ((PlayerEvent) event).getPlayer() : null;
-        if (player == null) {
-            // some things that do deal with players are not properly marked as a player event
-            // this will check to see if a #getPlayer() method exists on events coming through
+    private Player getPlayer(Object event) {
+        if (event instanceof PlayerEvent) {
+            Player player = ((PlayerEvent) event).getPlayer();
+            if (player != null) return player;
+        }
+        // some things that do deal with players are not properly marked as a player event
+        // this will check to see if a #getPlayer() method exists on events coming through
+        Optional<Method> getPlayerMethod = getPlayerMethods.computeIfAbsent(event.getClass(), eventClass -> {
             try {
-                Method getPlayerMethod = event.getClass().getMethod("getPlayer");
-                if (getPlayerMethod.getReturnType().equals(Player.class)) {
-                    player = (Player) getPlayerMethod.invoke(event);
-                }
-            } catch (Exception ignored) {
-                // we tried ¯\_(ツ)_/¯
+                Method method = eventClass.getMethod("getPlayer");
+                return method.getReturnType().equals(Player.class) ? Optional.of(method) : Optional.empty();
+            } catch (Exception e) {
+                return Optional.empty();
             }
+        });
+        if (!getPlayerMethod.isPresent()) return null;
+        try {
+            return (Player) getPlayerMethod.get().invoke(event);
+        } catch (Exception ignored) {
+            // we tried ¯\_(ツ)_/¯
+            return null;
         }
+    }
 
-        CommandSender sender = null;
-        String command = null;
-        List<String> args = new LinkedList<>();
+    private void process(Object event, Alert alert, String trigger, CommandTokenizer.Command tokenized, long eventNanos, Function<String, Object> placeholders) {
+        if (!plugin.isProfiling()) {
+            process(event, alert, trigger, tokenized, eventNanos, placeholders, null);
+            return;
+        }
 
+        AlertProfile profile = alert.getMetrics().getProfile();
+        long start = System.nanoTime();
+        try {
+            process(event, alert, trigger, tokenized, eventNanos, placeholders, profile);
+        } finally {
+            profile.recordTotal(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param placeholders extra placeholders for the alert's templates, null if there are none
+     * @param profile the profile to record the time spent in each stage in, null if profiling is disabled
+     */
+    private void process(Object event, Alert alert, String trigger, CommandTokenizer.Command tokenized, long eventNanos,
+                         Function<String, Object> placeholders, AlertProfile profile) {
+        long stageStart = profile != null ? System.nanoTime() : 0;
+        Player player = getPlayer(event);
+
+        CommandSender sender = null;
         if (event instanceof PlayerCommandPreprocessEvent) {
             sender = player;
-            command = ((PlayerCommandPreprocessEvent) event).getMessage().substring(1);
         } else if (event instanceof ServerCommandEvent) {
             sender = ((ServerCommandEvent) event).getSender();
-            command = ((ServerCommandEvent) event).getCommand();
         }
-        if (StringUtils.isNotBlank(command)) {
-            String[] split = command.split(" ", 2);
-            String commandBase = split[0];
-            if (split.length == 2) args.addAll(Arrays.asList(split[1].split(" ")));
+        lap(profile, AlertProfile.Stage.PLAYER, stageStart);
+        // "discordsrv:discord" is just "discord" for example
+        String command = tokenized != null ? tokenized.getCommand() : null;
+        List<String> args = tokenized != null ? tokenized.getArgs() : Collections.emptyList();
+        String allArgs = tokenized != null ? tokenized.getAllArgs() : "";
+
+        AlertMetrics metrics = alert.getMetrics();
+        MessageFormat messageFormat = alert.getMessageFormat();
+        if (messageFormat == null) {
+            plugin.debug("Not sending an alert because the MessageFormat is null");
+            return;
+        }
 
-            // transform "discordsrv:discord" to just "discord" for example
-            if (commandBase.contains(":")) commandBase = commandBase.substring(commandBase.lastIndexOf(":") + 1);
+        metrics.matched();
+        TraceBuffer trace = plugin.getTraceBuffer();
+        if (trace != null) trace.record(TraceEvent.Type.MATCHED, metrics.getName(), trigger);
 
-            command = commandBase + (split.length == 2 ? (" " + split[1]) : "");
+        // make sure alert should run even if event is cancelled
+        if (event instanceof Cancellable && ((Cancellable) event).isCancelled()) {
+            if (alert.isIgnoreCancelled()) {
+                if (plugin.isDebug()) plugin.debug("Not running alert for event " + getEventName(event) + ": event was cancelled");
+                if (trace != null) trace.record(TraceEvent.Type.SKIPPED, metrics.getName(), "event was cancelled");
+                return;
+            }
         }
 
-        MessageFormat messageFormat = MessageFormatUtil.getMessageFromConfiguration(plugin.config(), "Alerts." + alertIndex);
-        if (messageFormat == null) {
-            plugin.debug("Not sending an alert because the MessageFormat is null");
+        Set<String> targets = alert.getTargets();
+        if (targets.isEmpty() && messageFormat.getWebhookUrl() == null) {
+            if (plugin.isDebug()) plugin.debug("Not running alert for trigger " + trigger + ": no target was defined");
+            if (trace != null) trace.record(TraceEvent.Type.SKIPPED, metrics.getName(), "no target was defined");
             return;
         }
 
-        for (String trigger : triggers) {
-            String eventName = getEventName(event);
-            if (trigger.startsWith("/")) {
-                if (StringUtils.isBlank(command) || !command.toLowerCase().split("\\s+|$", 2)[0].equals(trigger.substring(1))) continue;
-            } else {
-                // make sure the called event matches what this alert is supposed to trigger on
-                if (!eventName.equalsIgnoreCase(trigger)) continue;
+        stageStart = profile != null ? System.nanoTime() : 0;
+        Set<Destination> destinations = alert.getResolvedDestinations();
+        if (destinations != null) {
+            destinationCacheMetrics.hit();
+        } else {
+            destinationCacheMetrics.miss();
+            destinations = resolveDestinations(targets, messageFormat);
+            // channels can't be resolved before DiscordSRV is hooked, so only remember complete resolutions
+            boolean channelTargets = targets.stream().anyMatch(Destination::isChannelTarget);
+            if (!destinations.isEmpty() && (!channelTargets || plugin.isDiscordSRVHookEnabled())) {
+                alert.setResolvedDestinations(destinations);
             }
+        }
+        lap(profile, AlertProfile.Stage.RESOLVE, stageStart);
+        if (destinations.isEmpty()) {
+            if (plugin.isDebug()) plugin.debug("Not running alert for trigger " + trigger + ": no target channel was defined/found (targets: " + targets + ")");
+            if (trace != null) trace.record(TraceEvent.Type.SKIPPED, metrics.getName(), "no target channel was found", targets);
+            return;
+        }
 
-            // make sure alert should run even if event is cancelled
-            if (event instanceof Cancellable && ((Cancellable) event).isCancelled()) {
-                Dynamic ignoreCancelledDynamic = alert.get("IgnoreCancelled");
-                boolean ignoreCancelled = ignoreCancelledDynamic.isPresent() ? ignoreCancelledDynamic.as(Boolean.class) : true;
-                if (ignoreCancelled) {
-                    plugin.debug("Not running alert for event " + eventName + ": event was cancelled");
-                    return;
+        boolean digested = false;
+        for (Destination destination : destinations) {
+            // don't bother checking conditions & rendering for a destination that is known to be down
+            Destination target = getDeliveryTarget(destination, messageFormat);
+            CircuitBreaker circuit = target != null ? plugin.getDeliveryService().getCircuit(target) : null;
+            if (circuit != null && !circuit.allowRequest()) {
+                if (trace != null) trace.record(TraceEvent.Type.SKIPPED, metrics.getName(), "circuit " + circuit.getState().name().toLowerCase(Locale.ROOT), target.toString());
+                continue;
+            }
+
+            TextChannel textChannel = destination.getChannel();
+            // check alert conditions
+            boolean allConditionsMet = true;
+            if (!alert.getConditions().isEmpty()) {
+                long conditionsStart = profile != null ? System.nanoTime() : 0;
+                for (Condition condition : alert.getConditions()) {
+                    String expression = condition.getExpressionString();
+                    long conditionStart = profile != null ? System.nanoTime() : 0;
+                    try {
+                        Boolean value = new SpELExpressionBuilder(condition)
+                                .withPluginVariables()
+                                .withVariable("event", event)
+                                .withVariable("server", Bukkit.getServer())
+                                .withVariable("discordsrv", plugin.getDiscordSRVHook().map(DiscordSRVHook::getDiscordSRV).orElse(null))
+                                .withVariable("alerts", plugin)
+                                .withVariable("player", player)
+                                .withVariable("sender", sender)
+                                .withVariable("command", command)
+                                .withVariable("args", args)
+                                .withVariable("allArgs", allArgs)
+                                .withVariable("channel", textChannel)
+                                .withVariable("jda", plugin.getDiscordSRVHook().map(DiscordSRVHook::getJDA).orElse(null))
+                                .withVariable("rate", plugin.getRateCounters())
+                                .withBudget(alert.getExpressionBudget())
+                                .evaluate(event, Boolean.class);
+                        if (plugin.isDebug()) plugin.debug("Condition \"" + expression + "\" -> " + value);
+                        if (trace != null) trace.record(TraceEvent.Type.CONDITION, metrics.getName(), expression, value);
+                        if (value != null && !value) {
+                            allConditionsMet = false;
+                            break;
+                        }
+                    } catch (SpelEvaluationException e) {
+                        plugin.error("Error while evaluating expression \"" + expression + "\" for trigger \"" + trigger + "\" -> " + e.getMessage());
+                    } finally {
+                        if (profile != null) profile.recordPart("expression", expression, System.nanoTime() - conditionStart);
+                    }
+                }
+                lap(profile, AlertProfile.Stage.CONDITIONS, conditionsStart);
+                if (!allConditionsMet) {
+                    metrics.rejected();
+                    if (trace != null) trace.record(TraceEvent.Type.REJECTED, metrics.getName(), destination.toString());
+                    continue;
                 }
             }
 
-            // TODO maybe rename to "target" & allow webhook urls
-            Dynamic targetsDynamic = alert.get("Target");
-            if (targetsDynamic == null) {
-                plugin.debug("Not running alert for trigger " + trigger + ": no target was defined");
-                return;
+            CommandSender finalSender = sender;
+            String finalCommand = command;
+
+            Player finalPlayer = player;
+            Function<Function<String, Object>, BiFunction<String, Boolean, String>> translatorFactory = extraPlaceholders -> (content, needsEscape) -> {
+                if (content == null) return null;
+
+                // evaluate any SpEL expressions
+                Map<String, Object> variables = new HashMap<>();
+                variables.put("event", event);
+                variables.put("server", Bukkit.getServer());
+                variables.put("discordsrv", plugin.getDiscordSRVHook().map(DiscordSRVHook::getDiscordSRV).orElse(null));
+                variables.put("alerts", plugin);
+                variables.put("player", finalPlayer);
+                variables.put("sender", finalSender);
+                variables.put("command", finalCommand);
+                variables.put("args", args);
+                variables.put("allArgs", allArgs);
+                variables.put("channel", textChannel);
+                variables.put("jda", plugin.getDiscordSRVHook().map(DiscordSRVHook::getJDA).orElse(null));
+                variables.put("rate", plugin.getRateCounters());
+                content = NamedValueFormatter.formatExpressions(content, event, variables, alert.getExpressionBudget());
+
+                // replace any normal placeholders
+                content = NamedValueFormatter.format(content, key -> {
+                    switch (key) {
+                        case "tps":
+                            return Lag.getTPSString();
+                        case "time":
+                        case "date":
+                            return plugin.getTimeProvider().timeStamp();
+                        case "ping":
+                            return finalPlayer != null ? plugin.getPlayerProvider().getPing(finalPlayer) : "-1";
+                        case "name":
+                        case "username":
+                            return finalPlayer != null ? finalPlayer.getName() : "";
+                        case "displayname":
+                            return finalPlayer != null ? MessageUtil.strip(needsEscape ? DiscordUtil.escapeMarkdown(finalPlayer.getDisplayName()) : finalPlayer.getDisplayName()) : "";
+                        case "world":
+                            return finalPlayer != null ? finalPlayer.getWorld().getName() : "";
+                        case "embedavatarurl":
+                            return finalPlayer != null ? plugin.getAvatarProvider().getAvatarUrl(finalPlayer) : DiscordUtil.getJda().getSelfUser().getEffectiveAvatarUrl();
+                        case "botavatarurl":
+                            return plugin.getDiscordSRVHook().map(hook -> hook.getJDA().getSelfUser().getEffectiveAvatarUrl()).orElse("https://cdn.discordapp.com/embed/avatars/0.png");
+                        case "botname":
+                            return plugin.getDiscordSRVHook().map(hook -> {
+                                Guild guild = hook.getDiscordSRV().getMainGuild();
+                                return guild != null ? guild.getSelfMember().getEffectiveName() : hook.getJDA().getSelfUser().getName();
+                            }).orElse("Bot");
+                        case "digest_top":
+                        case "digest_distinct":
+                        case "digest_total":
+                            KeyDigest digest = metrics.getDigest();
+                            return digest != null ? digest.getPlaceholder(key) : "";
+                        default:
+                            Object value = extraPlaceholders != null ? extraPlaceholders.apply(key) : null;
+                            return value != null ? value : "{" + key + "}";
+                    }
+                });
+
+                DiscordSRVHook hook = plugin.getDiscordSRVHook().orElse(null);
+                if (hook != null) {
+                    content = textChannel != null ? hook.translateEmotes(content, textChannel.getGuild()) : hook.translateEmotes(content);
+                }
+                content = PlaceholderUtil.replacePlaceholdersToDiscord(content, finalPlayer);
+                return content;
+            };
+            BiFunction<String, Boolean, String> translator = profiled(profile, translatorFactory.apply(placeholders));
+
+            KeyDigest digest = metrics.getDigest();
+            if (digest != null && !digested && alert.getDigest() != null) {
+                // once per occurrence rather than per destination, before rendering so it's part of the digest placeholders
+                digest.add(translator.apply(alert.getDigest().getKey(), false));
+                digested = true;
             }
-            Set<String> channels = new HashSet<>();
-            if (targetsDynamic.isList()) {
-                targetsDynamic.children()
-                        .map(Weak::asString)
-                        .filter(Objects::nonNull)
-                        .forEach(channels::add);
-            } else if (targetsDynamic.isString()) {
-                channels.add(targetsDynamic.asString());
+
+            Alert.Aggregate aggregate = alert.getAggregate();
+            if (aggregate != null) {
+                // fold this occurrence into the current window, the summary is sent once the window closes
+                String groupKey = aggregate.getKey() != null ? translator.apply(aggregate.getKey(), false) : "";
+                String value = aggregate.getValue() != null ? translator.apply(aggregate.getValue(), false) : null;
+
+                // the bucket key is logged if sending the summary fails, keep the webhook token out of it
+                plugin.getAggregator().record(
+                        "Alerts." + alert.getIndex() + "/" + Destination.describe(destination.getKey()) + "/" + groupKey,
+                        groupKey, aggregate.getWindowMillis(), aggregate.getSamples(), value,
+                        bucket -> deliver(alert, destination, profiled(profile, translatorFactory.apply(placeholder -> {
+                            Object bucketValue = bucket.getPlaceholder(placeholder);
+                            return bucketValue == null && placeholders != null ? placeholders.apply(placeholder) : bucketValue;
+                        })), metrics, profile, eventNanos)
+                );
+                if (trace != null) trace.record(TraceEvent.Type.AGGREGATED, metrics.getName(), destination.toString(), groupKey);
+                continue;
             }
+
+            deliver(alert, destination, translator, metrics, profile, eventNanos);
+        }
+    }
+
+    private Set<Destination> resolveDestinations(Set<String> targets, MessageFormat messageFormat) {
+        Set<Destination> destinations = new LinkedHashSet<>();
+        Set<String> channels = new HashSet<>();
+        for (String target : targets) {
+            if (Destination.isWebhookUrl(target)) {
+                destinations.add(Destination.webhook(target));
+            } else if (Destination.isSinkTarget(target)) {
+                destinations.add(Destination.sink(target));
+            } else {
+                channels.add(target);
+            }
+        }
+
+        if (!channels.isEmpty() && plugin.isDiscordSRVHookEnabled()) {
             Function<Function<String, Collection<TextChannel>>, Set<TextChannel>> channelResolver = converter -> {
                 Set<TextChannel> textChannels = new HashSet<>();
                 channels.forEach(channel -> textChannels.addAll(converter.apply(channel)));
@@ -389,133 +681,84 @@ public class AlertListener implements Listener {
             }
             if (textChannels.isEmpty()) {
                 textChannels.addAll(channelResolver.apply(s -> NumberUtils.isDigits(s) ?
-                        Collections.singleton(DiscordUtil.getJda().getTextChannelById(s)) : null));
+                        Collections.singleton(DiscordUtil.getJda().getTextChannelById(s)) : Collections.emptySet()));
             }
+            textChannels.forEach(textChannel -> destinations.add(Destination.channel(textChannel)));
+        }
 
-            if (textChannels.size() == 0) {
-                plugin.debug("Not running alert for trigger " + trigger + ": no target channel was defined/found (channels: " + channels + ")");
-                return;
-            }
+        if (destinations.isEmpty() && messageFormat.getWebhookUrl() != null) {
+            // no (resolvable) channels, but the message has a webhook url of its own
+            destinations.add(Destination.webhook(messageFormat.getWebhookUrl()));
+        }
+        return destinations;
+    }
 
-            for (TextChannel textChannel : textChannels) {
-                // check alert conditions
-                boolean allConditionsMet = true;
-                Dynamic conditionsDynamic = alert.dget("Conditions");
-                if (conditionsDynamic.isPresent()) {
-                    Iterator<Dynamic> conditions = conditionsDynamic.children().iterator();
-                    while (conditions.hasNext()) {
-                        Dynamic dynamic = conditions.next();
-                        String expression = dynamic.convert().intoString();
-                        try {
-                            Boolean value = new SpELExpressionBuilder(expression)
-                                    .withPluginVariables()
-                                    .withVariable("event", event)
-                                    .withVariable("server", Bukkit.getServer())
-                                    .withVariable("discordsrv", plugin.getDiscordSRVHook().map(DiscordSRVHook::getDiscordSRV).orElse(null))
-                                    .withVariable("alerts", plugin)
-                                    .withVariable("player", player)
-                                    .withVariable("sender", sender)
-                                    .withVariable("command", command)
-                                    .withVariable("args", args)
-                                    .withVariable("allArgs", String.join(" ", args))
-                                    .withVariable("channel", textChannel)
-                                    .withVariable("jda", plugin.getDiscordSRVHook().map(DiscordSRVHook::getJDA).orElse(null))
-                                    .evaluate(event, Boolean.class);
-                            plugin.debug("Condition \"" + expression + "\" -> " + value);
-                            if (value != null && !value) {
-                                allConditionsMet = false;
-                                break;
-                            }
-                        } catch (ParseException e) {
-                            plugin.error("Error while parsing expression \"" + expression + "\" for trigger \"" + trigger + "\" -> " + e.getMessage());
-                        } catch (SpelEvaluationException e) {
-                            plugin.error("Error while evaluating expression \"" + expression + "\" for trigger \"" + trigger + "\" -> " + e.getMessage());
-                        }
-                    }
-                    if (!allConditionsMet) continue;
-                }
+    private void deliver(Alert alert, Destination destination, BiFunction<String, Boolean, String> translator,
+                         AlertMetrics metrics, AlertProfile profile, long eventNanos) {
+        MessageTemplate template = alert.getMessageTemplate();
+        destination = getDeliveryTarget(destination, template.getFormat());
+        if (destination == null) {
+            //DiscordUtil.queueMessage(textChannel, message);
+            // TODO more stuff
+            return;
+        }
 
-                CommandSender finalSender = sender;
-                String finalCommand = command;
-
-                Player finalPlayer = player;
-                BiFunction<String, Boolean, String> translator = (content, needsEscape) -> {
-                    if (content == null) return null;
-
-                    // evaluate any SpEL expressions
-                    Map<String, Object> variables = new HashMap<>();
-                    variables.put("event", event);
-                    variables.put("server", Bukkit.getServer());
-                    variables.put("discordsrv", plugin.getDiscordSRVHook().map(DiscordSRVHook::getDiscordSRV).orElse(null));
-                    variables.put("alerts", plugin);
-                    variables.put("player", finalPlayer);
-                    variables.put("sender", finalSender);
-                    variables.put("command", finalCommand);
-                    variables.put("args", args);
-                    variables.put("allArgs", String.join(" ", args));
-                    variables.put("channel", textChannel);
-                    variables.put("jda", plugin.getDiscordSRVHook().map(DiscordSRVHook::getJDA).orElse(null));
-                    content = NamedValueFormatter.formatExpressions(content, event, variables);
-
-                    // replace any normal placeholders
-                    content = NamedValueFormatter.format(content, key -> {
-                        switch (key) {
-                            case "tps":
-                                return Lag.getTPSString();
-                            case "time":
-                            case "date":
-                                return plugin.getTimeProvider().timeStamp();
-                            case "ping":
-                                return finalPlayer != null ? plugin.getPlayerProvider().getPing(finalPlayer) : "-1";
-                            case "name":
-                            case "username":
-                                return finalPlayer != null ? finalPlayer.getName() : "";
-                            case "displayname":
-                                return finalPlayer != null ? MessageUtil.strip(needsEscape ? DiscordUtil.escapeMarkdown(finalPlayer.getDisplayName()) : finalPlayer.getDisplayName()) : "";
-                            case "world":
-                                return finalPlayer != null ? finalPlayer.getWorld().getName() : "";
-                            case "embedavatarurl":
-                                return finalPlayer != null ? plugin.getAvatarProvider().getAvatarUrl(finalPlayer) : DiscordUtil.getJda().getSelfUser().getEffectiveAvatarUrl();
-                            case "botavatarurl":
-                                return plugin.getDiscordSRVHook().map(hook -> hook.getJDA().getSelfUser().getEffectiveAvatarUrl()).orElse("https://cdn.discordapp.com/embed/avatars/0.png");
-                            case "botname":
-                                return plugin.getDiscordSRVHook().map(hook -> {
-                                    Guild guild = hook.getDiscordSRV().getMainGuild();
-                                    return guild != null ? guild.getSelfMember().getEffectiveName() : hook.getJDA().getSelfUser().getName();
-                                }).orElse("Bot");
-                            default:
-                                return "{" + key + "}";
-                        }
-                    });
-
-                    DiscordSRVHook hook = plugin.getDiscordSRVHook().orElse(null);
-                    if (hook != null) content = hook.translateEmotes(content, textChannel.getGuild());
-                    content = PlaceholderUtil.replacePlaceholdersToDiscord(content, finalPlayer);
-                    return content;
-                };
-
-                if (messageFormat.isUseWebhooks()) {
-                    if (plugin.isDiscordSRVHookEnabled()) {
-                        Message message = DiscordSRV.translateMessage(messageFormat.toDiscordSRV(), translator);
-                        if (message == null) {
-                            plugin.debug("Not sending alert because it is configured to have no message content");
-                            return;
-                        }
+        // only the parts with placeholders, expressions or emotes are rendered, the rest is reused as-is
+        long stageStart = profile != null ? System.nanoTime() : 0;
+        MessageFormat translated = template.render(translator);
+        stageStart = lap(profile, AlertProfile.Stage.RENDER, stageStart);
+        if (!translated.isAnyContent()) {
+            plugin.debug("Not sending alert because it is configured to have no message content");
+            return;
+        }
+        metrics.rendered();
+        TraceBuffer trace = plugin.getTraceBuffer();
+        if (trace != null) trace.record(TraceEvent.Type.RENDERED, metrics.getName(), destination.toString());
 
-                        WebhookUtil.deliverMessage(textChannel,
-                                translator.apply(messageFormat.getWebhookName(), false),
-                                translator.apply(messageFormat.getWebhookAvatarUrl(), false),
-                                message.getContentRaw(), message.getEmbeds().stream().findFirst().orElse(null));
-                    } else { // Webhooks wanted but no dsrv hook
-                        // TODO actual webhook url thing
-                        com.discordsrv.alerts.util.DiscordUtil.sendWebhookMessage(messageFormat, "https://discord.com/api/webhooks/860931721427419156/TCKqXs3y693G4MGjUOYVcLlkK4vvTDMQ-I8TEijgkJvhcCfr3CWpT29vFtp01p9QImLz");
-                    }
-                } else {
-                    //DiscordUtil.queueMessage(textChannel, message);
-                    // TODO more stuff
-                }
-            }
+        plugin.getDeliveryService().deliver(destination, new OutboundMessage(metrics.getName(), destination, translated), metrics, eventNanos,
+                alert.getPriority());
+        lap(profile, AlertProfile.Stage.DELIVER, stageStart);
+    }
+
+    /**
+     * @return where the message is actually sent for the given destination, null if it can't be sent there
+     */
+    private static Destination getDeliveryTarget(Destination destination, MessageFormat messageFormat) {
+        if (destination.getChannel() != null && messageFormat.isUseWebhooks() && messageFormat.getWebhookUrl() != null) {
+            // the message has a webhook of its own, use it instead of DiscordSRV's channel webhook
+            return Destination.webhook(messageFormat.getWebhookUrl());
+        } else if (destination.getChannel() != null && !messageFormat.isUseWebhooks()) {
+            return null;
         }
+        return destination;
+    }
+
+    /**
+     * Record the time since the start of a stage
+     *
+     * @return the current {@link System#nanoTime()}, the start of the next stage
+     */
+    private static long lap(AlertProfile profile, AlertProfile.Stage stage, long stageStart) {
+        if (profile == null) return 0;
+        long now = System.nanoTime();
+        profile.record(stage, now - stageStart);
+        return now;
+    }
+
+    /**
+     * Wrap the translator to record the time spent rendering each template in the profile
+     */
+    private static BiFunction<String, Boolean, String> profiled(AlertProfile profile, BiFunction<String, Boolean, String> translator) {
+        if (profile == null) return translator;
+        return (content, needsEscape) -> {
+            if (content == null) return null;
+            long start = System.nanoTime();
+            try {
+                return translator.apply(content, needsEscape);
+            } finally {
+                profile.recordPart("template", content, System.nanoTime() - start);
+            }
+        };
     }
 
 }
@@ -0,0 +1,156 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.listener;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.alert.Priority;
+import com.discordsrv.alerts.util.DurationUtil;
+import com.discordsrv.alerts.util.WeightedQueues;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs sync alerts on the main thread within a time budget per tick. Alerts run inline as long as the budget of the
+ * current tick allows, the rest is queued and drained by a task at the start of the following ticks. Every
+ * {@link Priority} has its own queue, drained in order and weighted against the other priorities.
+ * Alerts that aren't deferrable always run inline, the time they take still counts towards the tick's budget.
+ * All methods must be called from the main thread.
+ */
+public class SyncAlertQueue {
+
+    private static final long LAG_WARNING_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long LAG_WARNING_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Alerts plugin;
+    private final WeightedQueues<Entry> queue = new WeightedQueues<>();
+    private long spentNanos = 0;
+    private long lastLagWarning = 0;
+    private volatile int size = 0;
+    private volatile long oldestEnqueued = 0;
+    private BukkitTask task;
+
+    public SyncAlertQueue(Alerts plugin) {
+        this.plugin = plugin;
+    }
+
+    public void start() {
+        if (task != null) return;
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+    }
+
+    /**
+     * Stop draining, alerts that are still queued are run right away
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        Entry entry;
+        while ((entry = queue.poll()) != null) entry.runnable.run();
+        updateState();
+    }
+
+    /**
+     * Run the given alert now if the budget of this tick allows, otherwise queue it for the following ticks
+     *
+     * @param priority the priority of the alert
+     * @param deferrable false to always run the alert now, for events whose data is stale by the next tick
+     * @param runnable the remaining processing of the alert
+     */
+    public void submit(Priority priority, boolean deferrable, Runnable runnable) {
+        long budgetNanos = plugin.getSyncBudgetNanos();
+        // alerts of the same or a higher priority that are already waiting go first
+        if (!deferrable || budgetNanos <= 0 || (!queue.hasQueued(priority) && spentNanos < budgetNanos)) {
+            run(runnable);
+            return;
+        }
+        queue.add(priority, new Entry(runnable, System.currentTimeMillis()));
+        updateState();
+    }
+
+    private void tick() {
+        spentNanos = 0;
+        long budgetNanos = plugin.getSyncBudgetNanos();
+        Entry entry;
+        while ((budgetNanos <= 0 || spentNanos < budgetNanos) && (entry = queue.poll()) != null) {
+            run(entry.runnable);
+        }
+        updateState();
+
+        long lag = getLagMillis();
+        long now = System.currentTimeMillis();
+        if (lag >= LAG_WARNING_MILLIS && now - lastLagWarning >= LAG_WARNING_INTERVAL_MILLIS) {
+            lastLagWarning = now;
+            plugin.warning("Sync alerts are " + DurationUtil.format(lag) + " behind (" + size + " queued),"
+                    + " consider raising Sync.TickBudget or making the alerts async");
+        }
+    }
+
+    private void run(Runnable runnable) {
+        long start = System.nanoTime();
+        try {
+            runnable.run();
+        } catch (Throwable t) {
+            plugin.error("Failed to process a sync alert", t);
+        } finally {
+            spentNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void updateState() {
+        long oldest = 0;
+        for (Priority priority : Priority.values()) {
+            Entry head = queue.peek(priority);
+            if (head != null && (oldest == 0 || head.enqueued < oldest)) oldest = head.enqueued;
+        }
+        oldestEnqueued = oldest;
+        size = queue.size();
+    }
+
+    /**
+     * @return the amount of alerts waiting for a later tick
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return how long the oldest queued alert has been waiting, 0 if nothing is queued
+     */
+    public long getLagMillis() {
+        long oldest = oldestEnqueued;
+        return oldest != 0 ? Math.max(0, System.currentTimeMillis() - oldest) : 0;
+    }
+
+    private static final class Entry {
+
+        private final Runnable runnable;
+        private final long enqueued;
+
+        private Entry(Runnable runnable, long enqueued) {
+            this.runnable = runnable;
+            this.enqueued = enqueued;
+        }
+
+    }
+
+}
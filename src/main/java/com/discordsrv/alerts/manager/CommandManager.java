@@ -1,36 +1,49 @@
 package com.discordsrv.alerts.manager;
 
 import com.discordsrv.alerts.Alerts;
-import com.discordsrv.alerts.command.CommandImport;
+import com.discordsrv.alerts.command.CommandDebug;
 import com.discordsrv.alerts.command.CommandReload;
+import com.discordsrv.alerts.command.CommandStats;
+import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabExecutor;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.stream.Collectors;
 
 public class CommandManager implements CommandExecutor, TabExecutor {
 
     private final Map<String, Method> commandClasses = new HashMap<>();
+    private final Map<Class<?>, Object> commandInstances = new HashMap<>();
     private Alerts plugin;
 
     public CommandManager(Alerts plugin) {
         this.plugin = plugin;
 
         final List<Class<?>> commandClasses = Arrays.asList(
-                CommandImport.class,
-                CommandReload.class
+                CommandDebug.class,
+                CommandReload.class,
+                CommandStats.class
         );
 
         for (Class<?> clazz : commandClasses) {
             for (Method method : clazz.getMethods()) {
                 if (!method.isAnnotationPresent(com.discordsrv.alerts.command.Command.class)) {
+                    continue;
+                }
 
+                try {
+                    commandInstances.putIfAbsent(clazz, clazz.getConstructor().newInstance());
+                } catch (ReflectiveOperationException e) {
+                    plugin.error("Failed to initialize command class " + clazz.getSimpleName(), e);
+                    break;
+                }
+                for (String commandName : method.getAnnotation(com.discordsrv.alerts.command.Command.class).commandNames()) {
+                    this.commandClasses.put(commandName.toLowerCase(), method);
                 }
             }
         }
@@ -38,11 +51,45 @@ public class CommandManager implements CommandExecutor, TabExecutor {
 
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
-        return false;
+        if (args.length == 0) {
+            sender.sendMessage(ChatColor.AQUA + "Alerts v" + plugin.getDescription().getVersion());
+            for (Method method : new LinkedHashSet<>(commandClasses.values())) {
+                com.discordsrv.alerts.command.Command annotation = method.getAnnotation(com.discordsrv.alerts.command.Command.class);
+                if (!sender.hasPermission(annotation.permission())) continue;
+                sender.sendMessage(ChatColor.GRAY + "/" + label + " " + annotation.commandNames()[0] + ChatColor.DARK_GRAY + " - " + ChatColor.GRAY + annotation.helpMessage());
+            }
+            return true;
+        }
+
+        Method method = commandClasses.get(args[0].toLowerCase());
+        if (method == null) {
+            sender.sendMessage(ChatColor.RED + "Unknown subcommand, use /" + label + " for a list of commands");
+            return true;
+        }
+
+        com.discordsrv.alerts.command.Command annotation = method.getAnnotation(com.discordsrv.alerts.command.Command.class);
+        if (!sender.hasPermission(annotation.permission())) {
+            sender.sendMessage(ChatColor.RED + "You don't have permission to do that");
+            return true;
+        }
+
+        try {
+            method.invoke(commandInstances.get(method.getDeclaringClass()), sender, Arrays.copyOfRange(args, 1, args.length));
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            sender.sendMessage(ChatColor.RED + "An error occurred while running that command, check the console for details");
+            plugin.error("Failed to run command /" + label + " " + String.join(" ", args), e instanceof InvocationTargetException ? e.getCause() : e);
+        }
+        return true;
     }
 
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
-        return null;
+        if (args.length != 1) return Collections.emptyList();
+        return commandClasses.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(args[0].toLowerCase()))
+                .filter(entry -> sender.hasPermission(entry.getValue().getAnnotation(com.discordsrv.alerts.command.Command.class).permission()))
+                .map(Map.Entry::getKey)
+                .sorted()
+                .collect(Collectors.toList());
     }
 }
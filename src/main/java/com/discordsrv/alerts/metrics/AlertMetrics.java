@@ -0,0 +1,120 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for every stage an alert goes through, from a matching trigger to a delivered message
+ */
+public class AlertMetrics {
+
+    private final String name;
+
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder rendered = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    private final AlertProfile profile = new AlertProfile();
+    private volatile KeyDigest digest;
+
+    public AlertMetrics(String name) {
+        this.name = name;
+    }
+
+    public void matched() {
+        matched.increment();
+    }
+
+    public void rejected() {
+        rejected.increment();
+    }
+
+    public void rendered() {
+        rendered.increment();
+    }
+
+    /**
+     * @param eventNanos the {@link System#nanoTime()} of when the triggering event was received
+     */
+    public void delivered(long eventNanos) {
+        delivered.increment();
+        deliveryLatency.record(System.nanoTime() - eventNanos);
+    }
+
+    public void failed() {
+        failed.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getMatched() {
+        return matched.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getRendered() {
+        return rendered.sum();
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public LatencyHistogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    public AlertProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Start or stop keeping a digest of the alert's keys, a digest with the same size is kept across reloads
+     *
+     * @param topK the amount of top keys to keep, 0 or less to not keep a digest
+     */
+    public void configureDigest(int topK) {
+        KeyDigest digest = this.digest;
+        if (topK <= 0) {
+            this.digest = null;
+        } else if (digest == null || digest.getTopK() != topK) {
+            this.digest = new KeyDigest(topK);
+        }
+    }
+
+    /**
+     * @return the digest of the alert's keys, null if the alert doesn't keep one
+     */
+    public KeyDigest getDigest() {
+        return digest;
+    }
+
+}
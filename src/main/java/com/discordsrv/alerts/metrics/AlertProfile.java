@@ -0,0 +1,150 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.metrics;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Where an alert spends its time: a histogram per stage of processing, one for the whole of it and the total time
+ * spent in each condition expression & message template, to point at what makes a slow alert slow
+ */
+public class AlertProfile {
+
+    public enum Stage {
+        /** Finding the alerts for an event (shared by all alerts of the event) */
+        MATCH,
+        /** Finding the player of the event */
+        PLAYER,
+        /** Evaluating the conditions */
+        CONDITIONS,
+        /** Resolving the target channels */
+        RESOLVE,
+        /** Rendering the message */
+        RENDER,
+        /** Journaling & queueing the rendered message */
+        DELIVER
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGES.length];
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final Map<String, Part> parts = new ConcurrentHashMap<>();
+
+    public AlertProfile() {
+        for (int i = 0; i < stages.length; i++) stages[i] = new LatencyHistogram();
+    }
+
+    public void record(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * @param nanos the time it took to process the alert, from the trigger being matched to the message being queued
+     */
+    public void recordTotal(long nanos) {
+        total.record(nanos);
+    }
+
+    /**
+     * @param kind what the part is, "expression" or "template"
+     * @param source the expression or template
+     * @param nanos how long it took to evaluate or render
+     */
+    public void recordPart(String kind, String source, long nanos) {
+        Part part = parts.get(source);
+        if (part == null) part = parts.computeIfAbsent(source, key -> new Part(kind, key));
+        part.count.increment();
+        part.nanos.add(nanos);
+    }
+
+    public LatencyHistogram getStage(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    public LatencyHistogram getTotal() {
+        return total;
+    }
+
+    public Collection<Part> getParts() {
+        return parts.values();
+    }
+
+    /**
+     * @param limit how many parts to return
+     * @return the parts that took up the most time in total, most expensive first
+     */
+    public List<Part> getCostliestParts(int limit) {
+        return parts.values().stream()
+                .sorted(Comparator.comparingLong(Part::getTotalNanos).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * A condition expression or message template of the alert
+     */
+    public static final class Part {
+
+        private final String kind;
+        private final String source;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        private Part(String kind, String source) {
+            this.kind = kind;
+            this.source = source;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return nanos.sum();
+        }
+
+        public double getMeanMillis() {
+            long count = getCount();
+            return count == 0 ? 0 : getTotalNanos() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        @Override
+        public String toString() {
+            String source = this.source.length() > 80 ? this.source.substring(0, 77) + "..." : this.source;
+            return kind + " \"" + source + "\"";
+        }
+    }
+
+}
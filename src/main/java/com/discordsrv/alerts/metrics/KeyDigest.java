@@ -0,0 +1,76 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.metrics;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The heavy hitters and the distinct count of an alert's digest key, in a fixed amount of memory
+ */
+public class KeyDigest {
+
+    private final int topK;
+    private final TopKSketch topKeys;
+    private final HyperLogLog distinctKeys = new HyperLogLog();
+
+    public KeyDigest(int topK) {
+        this.topK = Math.max(1, topK);
+        // extra counters so the keys just under the top aren't evicted by the long tail
+        this.topKeys = new TopKSketch(Math.max(64, this.topK * 8));
+    }
+
+    public void add(String key) {
+        topKeys.add(key);
+        distinctKeys.add(key);
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    public List<TopKSketch.Counter> getTop() {
+        return topKeys.getTop(topK);
+    }
+
+    public long getDistinct() {
+        return distinctKeys.estimate();
+    }
+
+    public long getTotal() {
+        return topKeys.getTotal();
+    }
+
+    /**
+     * @return the value of the given digest placeholder, null if it isn't one
+     */
+    public Object getPlaceholder(String placeholder) {
+        switch (placeholder) {
+            case "digest_top":
+                return getTop().stream().map(TopKSketch.Counter::toString).collect(Collectors.joining(", "));
+            case "digest_distinct":
+                return getDistinct();
+            case "digest_total":
+                return getTotal();
+            default:
+                return null;
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with power of two microsecond buckets, from 1µs up to ~33s plus an overflow bucket.
+ * Percentiles are accurate to the upper bound of the bucket they fall into.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 27;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    private static int bucketOf(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        if (micros <= 1) return 0;
+        // ceil(log2(micros))
+        int bucket = 64 - Long.numberOfLeadingZeros(micros - 1);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * @param bucket the bucket index
+     * @return the inclusive upper bound of the bucket in microseconds, {@link Long#MAX_VALUE} for the overflow bucket
+     */
+    public static long getUpperBoundMicros(int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    public static int getBucketCount() {
+        return BUCKETS;
+    }
+
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    public double getMeanMillis() {
+        long count = getCount();
+        return count == 0 ? 0 : getSumNanos() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket the percentile falls into in milliseconds, 0 if nothing was recorded
+     */
+    public double getPercentileMillis(double percentile) {
+        return getPercentileMillis(getCounts(), percentile);
+    }
+
+    /**
+     * @return a copy of the count of every bucket
+     */
+    public long[] getCounts() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) snapshot[i] = counts.get(i);
+        return snapshot;
+    }
+
+    /**
+     * @param snapshot bucket counts, from {@link #getCounts()} or the difference between two of them
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket the percentile falls into in milliseconds, 0 if nothing was recorded
+     */
+    public static double getPercentileMillis(long[] snapshot, double percentile) {
+        long total = 0;
+        for (long count : snapshot) total += count;
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(total * (percentile / 100D));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // the overflow bucket doesn't have an upper bound, report its lower bound instead
+                long micros = i == BUCKETS - 1 ? getUpperBoundMicros(i - 1) : getUpperBoundMicros(i);
+                return micros / 1000D;
+            }
+        }
+        return getUpperBoundMicros(BUCKETS - 2) / 1000D;
+    }
+
+}
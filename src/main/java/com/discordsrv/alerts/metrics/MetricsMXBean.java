@@ -0,0 +1,52 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link MetricsRegistry}, registered as {@code com.discordsrv.alerts:type=Metrics}
+ */
+public interface MetricsMXBean {
+
+    long getEventsMatched();
+
+    long getConditionsRejected();
+
+    long getRendered();
+
+    long getDelivered();
+
+    long getFailed();
+
+    double getDeliveryLatencyMeanMillis();
+
+    double getDeliveryLatencyP50Millis();
+
+    double getDeliveryLatencyP99Millis();
+
+    Map<String, Long> getDeliveredByAlert();
+
+    Map<String, Long> getFailedByAlert();
+
+    Map<String, Long> getQueueDepths();
+
+    Map<String, Double> getCacheHitRates();
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.metrics;
+
+import com.discordsrv.alerts.Alerts;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Holds the per alert counters, queue depth gauges and cache statistics of the plugin
+ */
+public class MetricsRegistry implements MetricsMXBean {
+
+    private static final String OBJECT_NAME = "com.discordsrv.alerts:type=Metrics";
+
+    private final Alerts plugin;
+    private final Map<String, AlertMetrics> alerts = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+    private final Map<String, CacheMetrics> caches = new ConcurrentHashMap<>();
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    private boolean jmxRegistered = false;
+
+    public MetricsRegistry(Alerts plugin) {
+        this.plugin = plugin;
+    }
+
+    public AlertMetrics alert(String name) {
+        return alerts.computeIfAbsent(name, AlertMetrics::new);
+    }
+
+    public CacheMetrics cache(String name) {
+        return caches.computeIfAbsent(name, key -> new CacheMetrics());
+    }
+
+    public void registerCache(String name, CacheMetrics cache) {
+        caches.put(name, cache);
+    }
+
+    public void registerGauge(String name, Supplier<Number> supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Record a delivery of the given alert
+     *
+     * @param alert the metrics of the delivered alert
+     * @param eventNanos the {@link System#nanoTime()} of when the triggering event was received
+     */
+    public void delivered(AlertMetrics alert, long eventNanos) {
+        alert.delivered(eventNanos);
+        deliveryLatency.record(System.nanoTime() - eventNanos);
+    }
+
+    public Collection<AlertMetrics> getAlerts() {
+        List<AlertMetrics> list = new ArrayList<>(alerts.values());
+        list.sort(Comparator.comparing(AlertMetrics::getName));
+        return list;
+    }
+
+    public Map<String, CacheMetrics> getCaches() {
+        return new TreeMap<>(caches);
+    }
+
+    public LatencyHistogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    public void registerJmx() {
+        if (jmxRegistered) return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name); // left behind by a previous instance (plugin reload)
+            server.registerMBean(this, name);
+            jmxRegistered = true;
+        } catch (Exception e) {
+            plugin.error("Failed to register metrics MBean", e);
+        }
+    }
+
+    public void unregisterJmx() {
+        if (!jmxRegistered) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            plugin.debug("Failed to unregister metrics MBean: " + e);
+        }
+        jmxRegistered = false;
+    }
+
+    private long sum(ToLongFunction<AlertMetrics> function) {
+        return alerts.values().stream().mapToLong(function).sum();
+    }
+
+    private <T> Map<String, T> byAlert(Function<AlertMetrics, T> function) {
+        Map<String, T> map = new TreeMap<>();
+        alerts.forEach((name, metrics) -> map.put(name, function.apply(metrics)));
+        return map;
+    }
+
+    @Override
+    public long getEventsMatched() {
+        return sum(AlertMetrics::getMatched);
+    }
+
+    @Override
+    public long getConditionsRejected() {
+        return sum(AlertMetrics::getRejected);
+    }
+
+    @Override
+    public long getRendered() {
+        return sum(AlertMetrics::getRendered);
+    }
+
+    @Override
+    public long getDelivered() {
+        return sum(AlertMetrics::getDelivered);
+    }
+
+    @Override
+    public long getFailed() {
+        return sum(AlertMetrics::getFailed);
+    }
+
+    @Override
+    public double getDeliveryLatencyMeanMillis() {
+        return deliveryLatency.getMeanMillis();
+    }
+
+    @Override
+    public double getDeliveryLatencyP50Millis() {
+        return deliveryLatency.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getDeliveryLatencyP99Millis() {
+        return deliveryLatency.getPercentileMillis(99);
+    }
+
+    @Override
+    public Map<String, Long> getDeliveredByAlert() {
+        return byAlert(AlertMetrics::getDelivered);
+    }
+
+    @Override
+    public Map<String, Long> getFailedByAlert() {
+        return byAlert(AlertMetrics::getFailed);
+    }
+
+    @Override
+    public Map<String, Long> getQueueDepths() {
+        Map<String, Long> map = new TreeMap<>();
+        gauges.forEach((name, supplier) -> {
+            Number value = supplier.get();
+            map.put(name, value != null ? value.longValue() : 0L);
+        });
+        return map;
+    }
+
+    @Override
+    public Map<String, Double> getCacheHitRates() {
+        Map<String, Double> map = new TreeMap<>();
+        caches.forEach((name, cache) -> map.put(name, cache.getHitRate()));
+        return map;
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.metrics;
+
+import com.discordsrv.alerts.Alerts;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Periodically writes the metrics in the Prometheus text format, to be picked up by node_exporter's textfile collector
+ */
+public class PrometheusExporter {
+
+    private final Alerts plugin;
+    private final MetricsRegistry registry;
+    private final File file;
+    private BukkitTask task;
+
+    public PrometheusExporter(Alerts plugin, MetricsRegistry registry, File file) {
+        this.plugin = plugin;
+        this.registry = registry;
+        this.file = file;
+    }
+
+    public void start(long intervalTicks) {
+        if (task != null) return;
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::write, intervalTicks, intervalTicks);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    public void write() {
+        File temporary = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            Files.write(temporary.toPath(), render().getBytes(StandardCharsets.UTF_8));
+            // the collector must never see a half written file
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.debug("Failed to write Prometheus metrics to " + file + ": " + e);
+        }
+    }
+
+    public String render() {
+        StringBuilder builder = new StringBuilder();
+
+        counter(builder, "alerts_events_matched_total", "Events that matched an alert trigger");
+        for (AlertMetrics alert : registry.getAlerts()) sample(builder, "alerts_events_matched_total", alert.getName(), alert.getMatched());
+        counter(builder, "alerts_conditions_rejected_total", "Alerts not sent because a condition was not met");
+        for (AlertMetrics alert : registry.getAlerts()) sample(builder, "alerts_conditions_rejected_total", alert.getName(), alert.getRejected());
+        counter(builder, "alerts_rendered_total", "Alert messages rendered");
+        for (AlertMetrics alert : registry.getAlerts()) sample(builder, "alerts_rendered_total", alert.getName(), alert.getRendered());
+        counter(builder, "alerts_delivered_total", "Alert messages delivered");
+        for (AlertMetrics alert : registry.getAlerts()) sample(builder, "alerts_delivered_total", alert.getName(), alert.getDelivered());
+        counter(builder, "alerts_failed_total", "Alert messages that failed to deliver");
+        for (AlertMetrics alert : registry.getAlerts()) sample(builder, "alerts_failed_total", alert.getName(), alert.getFailed());
+
+        builder.append("# HELP alerts_delivery_latency_seconds Time from the event to the delivery of the alert\n");
+        builder.append("# TYPE alerts_delivery_latency_seconds histogram\n");
+        for (AlertMetrics alert : registry.getAlerts()) {
+            LatencyHistogram histogram = alert.getDeliveryLatency();
+            String label = "alert=\"" + escape(alert.getName()) + "\"";
+            long cumulative = 0;
+            for (int i = 0; i < LatencyHistogram.getBucketCount() - 1; i++) {
+                cumulative += histogram.getCount(i);
+                String le = String.format(Locale.ROOT, "%.6f", LatencyHistogram.getUpperBoundMicros(i) / 1_000_000D);
+                builder.append("alerts_delivery_latency_seconds_bucket{").append(label).append(",le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+            }
+            builder.append("alerts_delivery_latency_seconds_bucket{").append(label).append(",le=\"+Inf\"} ").append(histogram.getCount()).append('\n');
+            builder.append("alerts_delivery_latency_seconds_sum{").append(label).append("} ")
+                    .append(String.format(Locale.ROOT, "%.9f", histogram.getSumNanos() / 1_000_000_000D)).append('\n');
+            builder.append("alerts_delivery_latency_seconds_count{").append(label).append("} ").append(histogram.getCount()).append('\n');
+        }
+
+        builder.append("# HELP alerts_queue_depth Items waiting in one of the plugin's queues\n");
+        builder.append("# TYPE alerts_queue_depth gauge\n");
+        for (Map.Entry<String, Long> entry : registry.getQueueDepths().entrySet()) {
+            builder.append("alerts_queue_depth{queue=\"").append(escape(entry.getKey())).append("\"} ").append(entry.getValue()).append('\n');
+        }
+
+        builder.append("# HELP alerts_cache_requests_total Cache lookups by result\n");
+        builder.append("# TYPE alerts_cache_requests_total counter\n");
+        for (Map.Entry<String, CacheMetrics> entry : registry.getCaches().entrySet()) {
+            String cache = escape(entry.getKey());
+            builder.append("alerts_cache_requests_total{cache=\"").append(cache).append("\",result=\"hit\"} ").append(entry.getValue().getHits()).append('\n');
+            builder.append("alerts_cache_requests_total{cache=\"").append(cache).append("\",result=\"miss\"} ").append(entry.getValue().getMisses()).append('\n');
+        }
+
+        return builder.toString();
+    }
+
+    private static void counter(StringBuilder builder, String name, String help) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(" counter\n");
+    }
+
+    private static void sample(StringBuilder builder, String name, String alert, long value) {
+        builder.append(name).append("{alert=\"").append(escape(alert)).append("\"} ").append(value).append('\n');
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.metrics;
+
+import com.discordsrv.alerts.Alerts;
+import com.discordsrv.alerts.util.DurationUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically checks the {@link AlertProfile} of every alert and reports the ones whose p99 processing time over the
+ * last interval is above the threshold, along with the stage and the expression or template that cost the most
+ */
+public class SlowAlertReporter {
+
+    private static final AlertProfile.Stage[] STAGES = AlertProfile.Stage.values();
+
+    private final Alerts plugin;
+    private final MetricsRegistry registry;
+    private final long thresholdMillis;
+    private final long intervalMillis;
+    // the histogram counts at the previous report, [0] is the total and the rest are the stages. only used by the task
+    private final Map<String, long[][]> previous = new HashMap<>();
+    // the count & total time of every part at the previous report, per alert. only used by the task
+    private final Map<String, Map<AlertProfile.Part, long[]>> previousParts = new HashMap<>();
+    private BukkitTask task;
+
+    public SlowAlertReporter(Alerts plugin, MetricsRegistry registry, long thresholdMillis, long intervalMillis) {
+        this.plugin = plugin;
+        this.registry = registry;
+        this.thresholdMillis = thresholdMillis;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public void start() {
+        if (task != null) return;
+        long ticks = Math.max(1, intervalMillis / 50);
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::report, ticks, ticks);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    public void report() {
+        for (AlertMetrics alert : registry.getAlerts()) {
+            AlertProfile profile = alert.getProfile();
+            long[][] counts = new long[STAGES.length + 1][];
+            counts[0] = profile.getTotal().getCounts();
+            for (AlertProfile.Stage stage : STAGES) counts[stage.ordinal() + 1] = profile.getStage(stage).getCounts();
+
+            long[][] last = previous.put(alert.getName(), counts);
+            long[][] delta = new long[counts.length][];
+            for (int i = 0; i < counts.length; i++) {
+                delta[i] = counts[i].clone();
+                if (last != null) {
+                    for (int bucket = 0; bucket < delta[i].length; bucket++) delta[i][bucket] -= last[i][bucket];
+                }
+            }
+
+            // the part that took the most time within this interval, not since the alert was loaded
+            Map<AlertProfile.Part, long[]> parts = new HashMap<>();
+            Map<AlertProfile.Part, long[]> lastParts = previousParts.put(alert.getName(), parts);
+            AlertProfile.Part costliest = null;
+            long costliestNanos = 0;
+            long costliestCount = 0;
+            for (AlertProfile.Part part : profile.getParts()) {
+                long[] totals = new long[] {part.getCount(), part.getTotalNanos()};
+                parts.put(part, totals);
+                long[] lastTotals = lastParts != null ? lastParts.get(part) : null;
+                long count = totals[0] - (lastTotals != null ? lastTotals[0] : 0);
+                long nanos = totals[1] - (lastTotals != null ? lastTotals[1] : 0);
+                if (count > 0 && nanos > costliestNanos) {
+                    costliest = part;
+                    costliestNanos = nanos;
+                    costliestCount = count;
+                }
+            }
+
+            double p99 = LatencyHistogram.getPercentileMillis(delta[0], 99);
+            if (p99 < thresholdMillis) continue;
+
+            long runs = 0;
+            for (long count : delta[0]) runs += count;
+            AlertProfile.Stage slowestStage = null;
+            double slowestStageP99 = 0;
+            for (AlertProfile.Stage stage : STAGES) {
+                double stageP99 = LatencyHistogram.getPercentileMillis(delta[stage.ordinal() + 1], 99);
+                if (stageP99 > slowestStageP99) {
+                    slowestStage = stage;
+                    slowestStageP99 = stageP99;
+                }
+            }
+
+            StringBuilder message = new StringBuilder()
+                    .append("Alert ").append(alert.getName()).append(" is slow: p99 ")
+                    .append(String.format(Locale.ROOT, "%.2fms", p99))
+                    .append(" over ").append(runs).append(" run").append(runs != 1 ? "s" : "")
+                    .append(" in the last ").append(DurationUtil.format(intervalMillis));
+            if (slowestStage != null) {
+                message.append(", mostly in ").append(slowestStage.name().toLowerCase(Locale.ROOT))
+                        .append(String.format(Locale.ROOT, " (p99 %.2fms)", slowestStageP99));
+            }
+            if (costliest != null) {
+                message.append(". Costliest: ").append(costliest).append(String.format(Locale.ROOT, " (mean %.2fms)",
+                        costliestNanos / (double) costliestCount / TimeUnit.MILLISECONDS.toNanos(1)));
+            }
+            plugin.warning(message.toString());
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy hitters: keeps counters for a fixed amount of keys, a new key takes over the smallest counter
+ * (inheriting its count as the possible overestimation). Every key seen more than total / capacity times is kept,
+ * and the counts of the top keys are accurate to within their error.
+ */
+public class TopKSketch {
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private long total = 0;
+
+    /**
+     * @param capacity the amount of keys to keep counters for, a few times the amount of keys that'll be shown
+     */
+    public TopKSketch(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.counters = new HashMap<>(this.capacity * 2);
+    }
+
+    public synchronized void add(String key) {
+        total++;
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            counter.count++;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(key, new Counter(key, 1, 0));
+            return;
+        }
+
+        Counter min = null;
+        for (Counter candidate : counters.values()) {
+            if (min == null || candidate.count < min.count) min = candidate;
+        }
+        counters.remove(min.key);
+        counters.put(key, new Counter(key, min.count + 1, min.count));
+    }
+
+    /**
+     * @param amount the maximum amount of keys to return
+     * @return the keys with the highest counts, highest first
+     */
+    public synchronized List<Counter> getTop(int amount) {
+        List<Counter> top = new ArrayList<>(counters.size());
+        for (Counter counter : counters.values()) top.add(new Counter(counter.key, counter.count, counter.error));
+        top.sort((a, b) -> Long.compare(b.count, a.count));
+        return top.size() > amount ? new ArrayList<>(top.subList(0, amount)) : top;
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public static final class Counter {
+
+        private final String key;
+        private long count;
+        private final long error;
+
+        private Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the estimated count, at most {@link #getError()} more than the actual count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return key + " (" + count + ")";
+        }
+
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.rate;
+
+import com.discordsrv.alerts.Alerts;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sliding window counters of trigger matches per trigger and key, exposed to expressions as {@code #rate}.
+ * Counters that haven't been updated for longer than the window are evicted and the amount of keys is bounded,
+ * matches for new keys past the limit aren't counted until some are evicted.
+ */
+public class RateCounters {
+
+    /**
+     * The key counting every match of a trigger, regardless of the player
+     */
+    private static final Object ALL = new Object();
+
+    private final Alerts plugin;
+    private final Map<String, Map<Object, WindowCounter>> counters = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile int windowSeconds;
+    private volatile int maxKeys;
+    private volatile boolean enabled = false;
+    private volatile boolean warnedFull = false;
+    private BukkitTask task;
+
+    public RateCounters(Alerts plugin, int windowSeconds, int maxKeys) {
+        this.plugin = plugin;
+        this.windowSeconds = Math.max(1, windowSeconds);
+        this.maxKeys = Math.max(1, maxKeys);
+    }
+
+    public void start() {
+        if (task != null) return;
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::evictIdle, 200L, 200L);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        clear();
+    }
+
+    public void configure(int windowSeconds, int maxKeys) {
+        windowSeconds = Math.max(1, windowSeconds);
+        if (windowSeconds != this.windowSeconds) {
+            // the rings are sized for the old window
+            this.windowSeconds = windowSeconds;
+            clear();
+        }
+        this.maxKeys = Math.max(1, maxKeys);
+        warnedFull = false;
+    }
+
+    /**
+     * Counting is skipped entirely when no alert uses {@code #rate}
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) clear();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record a match of the given trigger
+     *
+     * @param trigger the lower case event name, or the command prefixed with /
+     * @param key the key to count the match under in addition to the trigger as a whole, usually the player's uuid, may be null
+     */
+    public void record(String trigger, Object key) {
+        if (!enabled) return;
+        long now = System.currentTimeMillis();
+        Map<Object, WindowCounter> triggerCounters = counters.get(trigger);
+        if (triggerCounters == null) triggerCounters = counters.computeIfAbsent(trigger, k -> new ConcurrentHashMap<>());
+        increment(triggerCounters, ALL, now);
+        if (key != null) increment(triggerCounters, key, now);
+    }
+
+    private void increment(Map<Object, WindowCounter> triggerCounters, Object key, long now) {
+        WindowCounter counter = triggerCounters.get(key);
+        if (counter == null) {
+            if (size.get() >= maxKeys) {
+                if (!warnedFull) {
+                    warnedFull = true;
+                    plugin.warning("Reached the limit of " + maxKeys + " rate counters (Rate.MaxKeys), new keys won't be counted until idle ones expire");
+                }
+                return;
+            }
+            counter = triggerCounters.computeIfAbsent(key, k -> {
+                size.incrementAndGet();
+                return new WindowCounter(windowSeconds);
+            });
+        }
+        counter.increment(now);
+    }
+
+    /**
+     * @param trigger the event name (case insensitive) or the command prefixed with /
+     * @param key the key the matches were counted under, usually {@code #player.uniqueId}
+     * @param seconds the length of the window, capped to Rate.Window
+     * @return the amount of matches for the trigger & key within the last given seconds, including the current match
+     */
+    public long count(String trigger, Object key, int seconds) {
+        if (trigger == null || key == null) return 0;
+        Map<Object, WindowCounter> triggerCounters = counters.get(trigger.toLowerCase(Locale.ROOT));
+        if (triggerCounters == null) return 0;
+        WindowCounter counter = triggerCounters.get(normalizeKey(key));
+        return counter != null ? counter.count(System.currentTimeMillis(), seconds) : 0;
+    }
+
+    /**
+     * @param trigger the event name (case insensitive) or the command prefixed with /
+     * @param seconds the length of the window, capped to Rate.Window
+     * @return the amount of matches for the trigger within the last given seconds, including the current match
+     */
+    public long count(String trigger, int seconds) {
+        return count(trigger, ALL, seconds);
+    }
+
+    private Object normalizeKey(Object key) {
+        if (key instanceof String) {
+            // allow the uuid to be given as a string
+            String string = (String) key;
+            if (string.length() == 36) {
+                try {
+                    return UUID.fromString(string);
+                } catch (IllegalArgumentException ignored) {}
+            }
+        }
+        return key;
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    public int getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - windowSeconds * 1000L;
+        // the per trigger maps are kept, there's only as many of them as there are triggers in use
+        for (Map<Object, WindowCounter> triggerCounters : counters.values()) {
+            for (Iterator<WindowCounter> iterator = triggerCounters.values().iterator(); iterator.hasNext(); ) {
+                if (iterator.next().getLastUpdate() < cutoff) {
+                    iterator.remove();
+                    size.decrementAndGet();
+                }
+            }
+        }
+        if (size.get() < maxKeys) warnedFull = false;
+    }
+
+    private void clear() {
+        counters.clear();
+        size.set(0);
+    }
+
+}
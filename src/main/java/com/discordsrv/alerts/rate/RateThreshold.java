@@ -0,0 +1,160 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.rate;
+
+import com.discordsrv.alerts.util.DurationUtil;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Rate section of an alert: the alert only fires when the rate of its trigger for a key crosses Count per Window,
+ * and not again until that key's rate has fallen back under Count.
+ * Every key takes the same small, fixed amount of memory regardless of the window: the rate is estimated from the count
+ * of the current & previous window, weighing the previous one by how much of it still overlaps the sliding window.
+ */
+public class RateThreshold {
+
+    private final long count;
+    private final long windowMillis;
+    private final String key;
+    private final int maxKeys;
+    private final Map<Object, State> states = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.currentTimeMillis());
+
+    public RateThreshold(long count, long windowMillis, String key, int maxKeys) {
+        this.count = Math.max(1, count);
+        this.windowMillis = Math.max(1, windowMillis);
+        this.key = key;
+        this.maxKeys = Math.max(1, maxKeys);
+    }
+
+    /**
+     * Record a match for the given key
+     *
+     * @return the estimated rate if this match made the key's rate cross the threshold (so the alert should fire),
+     *         -1 otherwise
+     */
+    public long record(Object key, long nowMillis) {
+        sweep(nowMillis);
+        State state = states.get(key);
+        if (state == null) {
+            // no room for the key, it isn't tracked until others go idle
+            if (states.size() >= maxKeys) return -1;
+            state = states.computeIfAbsent(key, k -> new State(nowMillis));
+        }
+        return state.record(nowMillis);
+    }
+
+    /**
+     * Forget keys that haven't been seen for two windows, their rate has dropped to zero
+     */
+    private void sweep(long nowMillis) {
+        long last = lastSweep.get();
+        if (nowMillis - last < windowMillis || !lastSweep.compareAndSet(last, nowMillis)) return;
+        long cutoff = nowMillis - 2 * windowMillis;
+        for (Iterator<State> iterator = states.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().getLastUpdate() < cutoff) iterator.remove();
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * @return the key template, null to key by player
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    public int getKeyCount() {
+        return states.size();
+    }
+
+    /**
+     * @return the placeholders available to the alert when it fires
+     */
+    public Object getPlaceholder(String placeholder, Object key, long rate) {
+        switch (placeholder) {
+            case "rate_key":
+                return key;
+            case "rate_count":
+                return rate;
+            case "rate_threshold":
+                return count;
+            case "rate_window":
+                return DurationUtil.format(windowMillis);
+            default:
+                return null;
+        }
+    }
+
+    private final class State {
+
+        private long windowStart;
+        private long current;
+        private long previous;
+        private boolean exceeded;
+        private volatile long lastUpdate;
+
+        private State(long nowMillis) {
+            this.windowStart = nowMillis;
+        }
+
+        private synchronized long record(long nowMillis) {
+            long elapsed = nowMillis - windowStart;
+            if (elapsed >= windowMillis) {
+                previous = elapsed >= 2 * windowMillis ? 0 : current;
+                current = 0;
+                windowStart += elapsed / windowMillis * windowMillis;
+                elapsed = nowMillis - windowStart;
+            }
+            current++;
+            lastUpdate = nowMillis;
+
+            double overlap = 1D - (double) Math.max(0, elapsed) / windowMillis;
+            long rate = current + (long) (previous * overlap);
+            if (rate < count) {
+                exceeded = false;
+                return -1;
+            }
+            if (exceeded) return -1;
+            exceeded = true;
+            return rate;
+        }
+
+        private long getLastUpdate() {
+            return lastUpdate;
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.rate;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free counter over a sliding window, made of a ring of one second buckets.
+ * Each bucket packs the second it belongs to and its count in a single long, so a stale bucket is reset
+ * and incremented with the same compare-and-set.
+ */
+public class WindowCounter {
+
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    private final AtomicLongArray buckets;
+    private volatile long lastUpdate;
+
+    public WindowCounter(int seconds) {
+        this.buckets = new AtomicLongArray(Math.max(1, seconds));
+    }
+
+    public void increment(long nowMillis) {
+        long second = nowMillis / 1000;
+        int index = (int) (second % buckets.length());
+        while (true) {
+            long current = buckets.get(index);
+            long next = (current >>> 32) == (second & COUNT_MASK) && (current & COUNT_MASK) != COUNT_MASK
+                    ? current + 1
+                    : (second << 32) | 1;
+            if (buckets.compareAndSet(index, current, next)) break;
+        }
+        lastUpdate = nowMillis;
+    }
+
+    /**
+     * @param seconds the length of the window, including the current second, capped to the ring size
+     * @return the amount of increments within the window
+     */
+    public long count(long nowMillis, int seconds) {
+        long second = nowMillis / 1000;
+        int length = buckets.length();
+        int window = Math.min(Math.max(seconds, 1), length);
+        long count = 0;
+        for (int i = 0; i < window; i++) {
+            long bucketSecond = second - i;
+            long value = buckets.get((int) (bucketSecond % length));
+            if ((value >>> 32) == (bucketSecond & COUNT_MASK)) count += value & COUNT_MASK;
+        }
+        return count;
+    }
+
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    public int getSeconds() {
+        return buckets.length();
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.util;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits a command line ("/minecraft:gamemode creative Notch") into its base ("gamemode") and arguments
+ * without allocating until the parts are actually needed.
+ */
+public final class CommandTokenizer {
+
+    private CommandTokenizer() {}
+
+    /**
+     * @return where the command base starts: after the leading slash and the namespace ("minecraft:").
+     *         Only one slash is stripped, "//wand" is the "/wand" command
+     */
+    public static int baseStart(String line) {
+        int start = !line.isEmpty() && line.charAt(0) == '/' ? 1 : 0;
+        int end = baseEnd(line, start);
+        for (int i = end - 1; i >= start; i--) {
+            if (line.charAt(i) == ':') return i + 1;
+        }
+        return start;
+    }
+
+    /**
+     * @return where the command base that starts at the given index ends (exclusive)
+     */
+    public static int baseEnd(String line, int start) {
+        int end = start;
+        int length = line.length();
+        while (end < length && !Character.isWhitespace(line.charAt(end))) end++;
+        return end;
+    }
+
+    public static Command tokenize(String line) {
+        int start = baseStart(line);
+        return new Command(line, start, baseEnd(line, start));
+    }
+
+    /**
+     * A tokenized command, the parts are created on first use. Can be shared between threads.
+     */
+    public static final class Command {
+
+        private final String line;
+        private final int baseStart;
+        private final int baseEnd;
+        private volatile String base;
+        private volatile String command;
+        private volatile List<String> args;
+
+        private Command(String line, int baseStart, int baseEnd) {
+            this.line = line;
+            this.baseStart = baseStart;
+            this.baseEnd = baseEnd;
+        }
+
+        /**
+         * @return the command base without namespace, "gamemode" for "/minecraft:gamemode creative Notch"
+         */
+        public String getBase() {
+            if (base == null) base = line.substring(baseStart, baseEnd);
+            return base;
+        }
+
+        /**
+         * @return the command without slash and namespace, "gamemode creative Notch" for "/minecraft:gamemode creative Notch"
+         */
+        public String getCommand() {
+            if (command == null) command = line.substring(baseStart);
+            return command;
+        }
+
+        /**
+         * @return everything after the command base, "creative Notch" for "/minecraft:gamemode creative Notch"
+         */
+        public String getAllArgs() {
+            return baseEnd < line.length() ? line.substring(baseEnd + 1) : "";
+        }
+
+        /**
+         * @return the arguments split on spaces, only split when first accessed
+         */
+        public List<String> getArgs() {
+            if (args == null) args = baseEnd < line.length() ? new Args(getAllArgs()) : Collections.emptyList();
+            return args;
+        }
+
+    }
+
+    private static final class Args extends AbstractList<String> {
+
+        private final String allArgs;
+        private volatile String[] split;
+
+        private Args(String allArgs) {
+            this.allArgs = allArgs;
+        }
+
+        private String[] split() {
+            if (split == null) split = allArgs.split(" ");
+            return split;
+        }
+
+        @Override
+        public String get(int index) {
+            return split()[index];
+        }
+
+        @Override
+        public int size() {
+            return split().length;
+        }
+
+        @Override
+        public String toString() {
+            return allArgs;
+        }
+
+    }
+
+}
@@ -25,6 +25,7 @@ import com.discordsrv.alerts.Alerts;
 import org.bukkit.Bukkit;
 
 import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -83,4 +84,111 @@ public class DiscordUtil {
         });
 
     }
+
+    /**
+     * Serialize the given (already translated) message into the json body of a webhook execution
+     *
+     * @param message the message
+     * @return the json payload
+     */
+    public static String toWebhookJson(MessageFormat message) {
+        StringBuilder json = new StringBuilder("{");
+        appendJson(json, "content", message.getContent());
+        appendJson(json, "username", message.getWebhookName());
+        appendJson(json, "avatar_url", message.getWebhookAvatarUrl());
+
+        if (message.hasEmbed()) {
+            json.append("\"embeds\":[{");
+            appendJson(json, "title", message.getTitle());
+            appendJson(json, "url", message.getTitleUrl());
+            appendJson(json, "description", message.getDescription());
+            if (message.getColor() != null) json.append("\"color\":").append(message.getColor().getRGB() & 0xFFFFFF).append(',');
+            if (message.getTimestamp() != null) appendJson(json, "timestamp", DateTimeFormatter.ISO_INSTANT.format(message.getTimestamp()));
+            if (message.getAuthorName() != null) {
+                json.append("\"author\":{");
+                appendJson(json, "name", message.getAuthorName());
+                appendJson(json, "url", message.getAuthorUrl());
+                appendJson(json, "icon_url", message.getAuthorImageUrl());
+                endObject(json).append(',');
+            }
+            if (message.getThumbnailUrl() != null) {
+                json.append("\"thumbnail\":{");
+                appendJson(json, "url", message.getThumbnailUrl());
+                endObject(json).append(',');
+            }
+            if (message.getImageUrl() != null) {
+                json.append("\"image\":{");
+                appendJson(json, "url", message.getImageUrl());
+                endObject(json).append(',');
+            }
+            if (message.getFooterText() != null) {
+                json.append("\"footer\":{");
+                appendJson(json, "text", message.getFooterText());
+                appendJson(json, "icon_url", message.getFooterIconUrl());
+                endObject(json).append(',');
+            }
+            if (message.getFields() != null && !message.getFields().isEmpty()) {
+                json.append("\"fields\":[");
+                for (MessageFormat.Field field : message.getFields()) {
+                    json.append('{');
+                    appendJson(json, "name", field.getTitle());
+                    appendJson(json, "value", field.getValue());
+                    json.append("\"inline\":").append(field.isInline()).append("},");
+                }
+                json.setLength(json.length() - 1);
+                json.append("],");
+            }
+            endObject(json).append("],");
+        }
+        return endObject(json).toString();
+    }
+
+    private static void appendJson(StringBuilder json, String key, String value) {
+        if (value == null) return;
+        json.append('"').append(key).append("\":");
+        quote(json, value);
+        json.append(',');
+    }
+
+    private static StringBuilder endObject(StringBuilder json) {
+        if (json.charAt(json.length() - 1) == ',') json.setLength(json.length() - 1);
+        return json.append('}');
+    }
+
+    /**
+     * Append the given String to the builder as a quoted & escaped json String
+     *
+     * @param json the builder to append to
+     * @param value the value to quote
+     */
+    public static void quote(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.util;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.concurrent.TimeUnit;
+
+public class DurationUtil {
+
+    private DurationUtil() {}
+
+    /**
+     * Parse a duration from the config, such as "500ms", "30s", "5m", "1h" or "1d".
+     * A plain number is interpreted as seconds.
+     *
+     * @param input the duration to parse
+     * @param defaultMillis the value to return if the input is blank or invalid
+     * @return the duration in milliseconds
+     */
+    public static long parseMillis(String input, long defaultMillis) {
+        if (StringUtils.isBlank(input)) return defaultMillis;
+        String value = input.trim().toLowerCase();
+
+        TimeUnit unit = TimeUnit.SECONDS;
+        String number = value;
+        if (value.endsWith("ms")) {
+            unit = TimeUnit.MILLISECONDS;
+            number = value.substring(0, value.length() - 2);
+        } else if (value.endsWith("s")) {
+            number = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("m")) {
+            unit = TimeUnit.MINUTES;
+            number = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("h")) {
+            unit = TimeUnit.HOURS;
+            number = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("d")) {
+            unit = TimeUnit.DAYS;
+            number = value.substring(0, value.length() - 1);
+        }
+
+        number = number.trim();
+        if (!NumberUtils.isDigits(number)) return defaultMillis;
+        return unit.toMillis(Long.parseLong(number));
+    }
+
+    /**
+     * Format the given duration in the shortest form {@link #parseMillis(String, long)} would accept.
+     *
+     * @param millis the duration in milliseconds
+     * @return the formatted duration, eg. "30s"
+     */
+    public static String format(long millis) {
+        if (millis % TimeUnit.DAYS.toMillis(1) == 0 && millis != 0) return TimeUnit.MILLISECONDS.toDays(millis) + "d";
+        if (millis % TimeUnit.HOURS.toMillis(1) == 0 && millis != 0) return TimeUnit.MILLISECONDS.toHours(millis) + "h";
+        if (millis % TimeUnit.MINUTES.toMillis(1) == 0 && millis != 0) return TimeUnit.MILLISECONDS.toMinutes(millis) + "m";
+        if (millis % TimeUnit.SECONDS.toMillis(1) == 0 && millis != 0) return TimeUnit.MILLISECONDS.toSeconds(millis) + "s";
+        return millis + "ms";
+    }
+
+}
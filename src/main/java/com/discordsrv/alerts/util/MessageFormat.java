@@ -83,7 +83,7 @@ public class MessageFormat {
                 footerIconUrl,
                 timestamp,
                 color,
-                fields != null ? fields.stream().map(field -> new MessageEmbed.Field(field.getTitle(), field.getValue(), field.isInline(), false)).collect(Collectors.toList()) : null,
+                fields != null ? fields.stream().map(Field::toDiscordSRV).collect(Collectors.toList()) : null,
                 useWebhooks,
                 webhookAvatarUrl,
                 webhookName
@@ -95,6 +95,7 @@ public class MessageFormat {
         private final String title;
         private final String value;
         private final boolean inline;
+        private volatile MessageEmbed.Field discordSRV;
 
         public Field(String title, String value, boolean inline) {
             this.title = title;
@@ -113,6 +114,18 @@ public class MessageFormat {
         public boolean isInline() {
             return inline;
         }
+
+        /**
+         * @return this field as a JDA embed field, created once per field
+         */
+        public MessageEmbed.Field toDiscordSRV() {
+            MessageEmbed.Field discordSRV = this.discordSRV;
+            if (discordSRV == null) {
+                discordSRV = new MessageEmbed.Field(title, value, inline, false);
+                this.discordSRV = discordSRV;
+            }
+            return discordSRV;
+        }
     }
 
 }
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BiFunction;
 
 public class MessageFormatUtil {
 
@@ -141,4 +142,45 @@ public class MessageFormatUtil {
 
         return messageFormat.isAnyContent() ? messageFormat : null;
     }
+
+    /**
+     * Create a copy of the given MessageFormat with all text run through the given translator.
+     * The second argument of the translator is true for text that should have markdown escaped and false for urls.
+     *
+     * @param format the format to translate
+     * @param translator the translator that replaces placeholders
+     * @return the translated format
+     */
+    public static MessageFormat translate(MessageFormat format, BiFunction<String, Boolean, String> translator) {
+        MessageFormat translated = new MessageFormat();
+        translated.setContent(translator.apply(format.getContent(), true));
+        translated.setAuthorName(translator.apply(format.getAuthorName(), true));
+        translated.setAuthorUrl(translator.apply(format.getAuthorUrl(), false));
+        translated.setAuthorImageUrl(translator.apply(format.getAuthorImageUrl(), false));
+        translated.setThumbnailUrl(translator.apply(format.getThumbnailUrl(), false));
+        translated.setTitle(translator.apply(format.getTitle(), true));
+        translated.setTitleUrl(translator.apply(format.getTitleUrl(), false));
+        translated.setDescription(translator.apply(format.getDescription(), true));
+        translated.setImageUrl(translator.apply(format.getImageUrl(), false));
+        translated.setFooterText(translator.apply(format.getFooterText(), true));
+        translated.setFooterIconUrl(translator.apply(format.getFooterIconUrl(), false));
+        translated.setTimestamp(format.getTimestamp());
+        translated.setColor(format.getColor());
+        if (format.getFields() != null) {
+            List<MessageFormat.Field> fields = new ArrayList<>();
+            for (MessageFormat.Field field : format.getFields()) {
+                fields.add(new MessageFormat.Field(
+                        translator.apply(field.getTitle(), true),
+                        translator.apply(field.getValue(), true),
+                        field.isInline()
+                ));
+            }
+            translated.setFields(fields);
+        }
+        translated.setUseWebhooks(format.isUseWebhooks());
+        translated.setWebhookName(translator.apply(format.getWebhookName(), false));
+        translated.setWebhookAvatarUrl(translator.apply(format.getWebhookAvatarUrl(), false));
+        translated.setWebhookUrl(format.getWebhookUrl());
+        return translated;
+    }
 }
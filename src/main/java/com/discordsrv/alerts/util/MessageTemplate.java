@@ -0,0 +1,140 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link MessageFormat} compiled for rendering, the parts without placeholders, expressions or emotes are detected
+ * once and reused as-is for every alert, only the rest goes through the translator.
+ * Messages without any dynamic parts are rendered once and the same instance is returned every time.
+ */
+public final class MessageTemplate {
+
+    private static final Pattern EMOTE_PATTERN = Pattern.compile(":[^\\s:]+:");
+
+    private final MessageFormat format;
+    private final Set<String> dynamic = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<MessageFormat.Field> staticFields;
+    private final MessageFormat rendered;
+
+    public MessageTemplate(MessageFormat format) {
+        this.format = format;
+        MessageFormatUtil.translate(format, (content, needsEscape) -> {
+            if (content != null && !isStatic(content)) dynamic.add(content);
+            return content;
+        });
+
+        List<MessageFormat.Field> fields = format.getFields();
+        boolean fieldsStatic = true;
+        if (fields != null) {
+            for (MessageFormat.Field field : fields) {
+                if (dynamic.contains(field.getTitle()) || dynamic.contains(field.getValue())) {
+                    fieldsStatic = false;
+                    break;
+                }
+            }
+        }
+        this.staticFields = fields != null && fieldsStatic ? Collections.unmodifiableList(new ArrayList<>(fields)) : null;
+        this.rendered = dynamic.isEmpty() ? render0((content, needsEscape) -> content) : null;
+    }
+
+    /**
+     * @param template the template
+     * @return true if rendering the template would always give back the template itself
+     */
+    public static boolean isStatic(String template) {
+        // anything the translator could replace: {placeholders}, ${expressions}, %PlaceholderAPI% placeholders,
+        // :emotes: and legacy color codes (stripped after PlaceholderAPI)
+        return template.indexOf('{') == -1 && template.indexOf('%') == -1 && template.indexOf('\u00a7') == -1
+                && !EMOTE_PATTERN.matcher(template).find();
+    }
+
+    public MessageFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return true if the message has no dynamic parts
+     */
+    public boolean isStatic() {
+        return rendered != null;
+    }
+
+    /**
+     * Render the message, the result may be shared and must not be modified
+     *
+     * @param translator the translator for the dynamic parts, see {@link MessageFormatUtil#translate(MessageFormat, BiFunction)}
+     * @return the rendered message
+     */
+    public MessageFormat render(BiFunction<String, Boolean, String> translator) {
+        return rendered != null ? rendered : render0(translator);
+    }
+
+    private MessageFormat render0(BiFunction<String, Boolean, String> translator) {
+        MessageFormat translated = new MessageFormat();
+        translated.setContent(apply(format.getContent(), true, translator));
+        translated.setAuthorName(apply(format.getAuthorName(), true, translator));
+        translated.setAuthorUrl(apply(format.getAuthorUrl(), false, translator));
+        translated.setAuthorImageUrl(apply(format.getAuthorImageUrl(), false, translator));
+        translated.setThumbnailUrl(apply(format.getThumbnailUrl(), false, translator));
+        translated.setTitle(apply(format.getTitle(), true, translator));
+        translated.setTitleUrl(apply(format.getTitleUrl(), false, translator));
+        translated.setDescription(apply(format.getDescription(), true, translator));
+        translated.setImageUrl(apply(format.getImageUrl(), false, translator));
+        translated.setFooterText(apply(format.getFooterText(), true, translator));
+        translated.setFooterIconUrl(apply(format.getFooterIconUrl(), false, translator));
+        translated.setTimestamp(format.getTimestamp());
+        translated.setColor(format.getColor());
+        if (staticFields != null) {
+            translated.setFields(staticFields);
+        } else if (format.getFields() != null) {
+            List<MessageFormat.Field> fields = new ArrayList<>(format.getFields().size());
+            for (MessageFormat.Field field : format.getFields()) {
+                if (!dynamic.contains(field.getTitle()) && !dynamic.contains(field.getValue())) {
+                    // reusing the field also reuses its converted embed field
+                    fields.add(field);
+                    continue;
+                }
+                fields.add(new MessageFormat.Field(
+                        apply(field.getTitle(), true, translator),
+                        apply(field.getValue(), true, translator),
+                        field.isInline()
+                ));
+            }
+            translated.setFields(fields);
+        }
+        translated.setUseWebhooks(format.isUseWebhooks());
+        translated.setWebhookName(apply(format.getWebhookName(), false, translator));
+        translated.setWebhookAvatarUrl(apply(format.getWebhookAvatarUrl(), false, translator));
+        translated.setWebhookUrl(format.getWebhookUrl());
+        return translated;
+    }
+
+    private String apply(String template, boolean needsEscape, BiFunction<String, Boolean, String> translator) {
+        return template != null && dynamic.contains(template) ? translator.apply(template, needsEscape) : template;
+    }
+
+}
@@ -18,10 +18,12 @@
 
 package com.discordsrv.alerts.util;
 
+import com.discordsrv.alerts.alert.ExpressionBudget;
 import github.scarsz.discordsrv.DiscordSRV;
 import github.scarsz.discordsrv.util.DiscordUtil;
 import org.bukkit.Bukkit;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -86,14 +88,42 @@ public abstract class NamedValueFormatter {
     }
 
     public static String formatExpressions(String format, Object root, Map<String, Object> variables) {
-        return format(format, EXPRESSION_PATTERN, expression -> new SpELExpressionBuilder(expression)
-                .withPluginVariables()
-                .withVariable("server", Bukkit.getServer())
-                .withVariable("discordsrv", DiscordSRV.getPlugin()) // TODO
-                .withVariable("jda", DiscordUtil.getJda()) // TODO
-                .withVariables(variables)
-                .evaluate(root)
-        );
+        return formatExpressions(format, root, variables, null);
+    }
+
+    /**
+     * Replace expressions in the given format String with the evaluated results, timing them against the given budget
+     *
+     * @param format the format to process
+     * @param root the root object
+     * @param variables the variables available to the expressions
+     * @param budget the budget of the alert the format belongs to, may be null
+     * @return the formatted String
+     */
+    public static String formatExpressions(String format, Object root, Map<String, Object> variables, ExpressionBudget budget) {
+        return format(format, EXPRESSION_PATTERN, expression -> {
+            SpELExpressionBuilder builder = new SpELExpressionBuilder(expression)
+                    .withPluginVariables()
+                    .withVariable("server", Bukkit.getServer());
+            // only look these up if the caller didn't already provide them
+            if (!variables.containsKey("discordsrv")) builder.withVariable("discordsrv", DiscordSRV.getPlugin()); // TODO
+            if (!variables.containsKey("jda")) builder.withVariable("jda", DiscordUtil.getJda()); // TODO
+            return builder.withVariables(variables).withBudget(budget).evaluate(root);
+        });
+    }
+
+    /**
+     * Collect the expressions used in the given format String
+     *
+     * @param format the format to scan, may be null
+     * @param expressions the collection the found expressions are added to
+     */
+    public static void collectExpressions(String format, Collection<String> expressions) {
+        if (format == null) return;
+        Matcher matcher = EXPRESSION_PATTERN.matcher(format);
+        while (matcher.find()) {
+            if (matcher.group(2) != null) expressions.add(matcher.group(2));
+        }
     }
 
     /**
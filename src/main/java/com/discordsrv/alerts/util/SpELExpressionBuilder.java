@@ -18,28 +18,184 @@
 
 package com.discordsrv.alerts.util;
 
+import com.discordsrv.alerts.alert.ExpressionBudget;
+import com.discordsrv.alerts.condition.CompiledChain;
+import com.discordsrv.alerts.condition.CompiledCondition;
+import com.discordsrv.alerts.condition.Condition;
+import com.discordsrv.alerts.metrics.CacheMetrics;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.Plugin;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
 import org.springframework.expression.ParseException;
+import org.springframework.expression.PropertyAccessor;
 import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.ast.BeanReference;
+import org.springframework.expression.spel.ast.ConstructorReference;
+import org.springframework.expression.spel.ast.TypeReference;
+import org.springframework.expression.spel.standard.SpelExpression;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.DataBindingMethodResolver;
+import org.springframework.expression.spel.support.DataBindingPropertyAccessor;
+import org.springframework.expression.spel.support.ReflectivePropertyAccessor;
+import org.springframework.expression.spel.support.SimpleEvaluationContext;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class SpELExpressionBuilder {
 
     private static final ExpressionParser PARSER = new SpelExpressionParser();
+    private static final Map<String, Expression> PARSED_EXPRESSIONS = new ConcurrentHashMap<>();
+    private static final Map<String, Optional<CompiledChain>> COMPILED_CHAINS = new ConcurrentHashMap<>();
+    private static final CacheMetrics CACHE_METRICS = new CacheMetrics();
+    private static final String PLUGINS_VARIABLE = "plugins";
+
+    // shared so the member lookups they cache survive across evaluations, a new context would start with an empty cache
+    private static final List<PropertyAccessor> PROPERTY_ACCESSORS = Collections.singletonList(new ReflectivePropertyAccessor());
+    private static final DataBindingPropertyAccessor RESTRICTED_PROPERTY_ACCESSOR = DataBindingPropertyAccessor.forReadOnlyAccess();
+    private static final DataBindingMethodResolver RESTRICTED_METHOD_RESOLVER = DataBindingMethodResolver.forInstanceMethodInvocation();
+
+    private static volatile boolean restricted = false;
+    private static volatile long budgetNanos = 0;
+    private static volatile int maxOverBudget = 0;
 
     private final String expression;
+    private final Expression parsed;
+    private final CompiledCondition compiled;
     private final Map<String, Object> variables = new HashMap<>();
+    private ExpressionBudget budget;
+    private boolean pluginVariables = false;
 
     public SpELExpressionBuilder(String expression) {
         this.expression = expression;
+        this.parsed = null;
+        this.compiled = null;
+    }
+
+    public SpELExpressionBuilder(Expression parsed) {
+        this.expression = parsed.getExpressionString();
+        this.parsed = parsed;
+        this.compiled = null;
+    }
+
+    /**
+     * Evaluates the compiled form of the condition when it has one, falling back to SpEL otherwise
+     *
+     * @param condition the condition
+     */
+    public SpELExpressionBuilder(Condition condition) {
+        this.expression = condition.getExpressionString();
+        this.parsed = condition.getExpression();
+        this.compiled = condition.getCompiled();
+    }
+
+    /**
+     * Parse the given expression, or return the already parsed expression if it has been seen before.
+     * Parsed expressions are thread safe and can be shared between evaluations.
+     *
+     * @param expression the expression to parse
+     * @return the parsed expression
+     * @throws ParseException if the expression is invalid
+     */
+    public static Expression parse(String expression) throws ParseException {
+        Expression parsed = PARSED_EXPRESSIONS.get(expression);
+        if (parsed != null) {
+            CACHE_METRICS.hit();
+            return parsed;
+        }
+        CACHE_METRICS.miss();
+        parsed = PARSER.parseExpression(expression);
+        PARSED_EXPRESSIONS.put(expression, parsed);
+        return parsed;
+    }
+
+    /**
+     * Drop every cached expression that isn't in the given collection, used when alerts are reloaded
+     *
+     * @param expressions the expressions that are still in use
+     */
+    public static void retainParsed(Collection<String> expressions) {
+        PARSED_EXPRESSIONS.keySet().retainAll(expressions);
+        COMPILED_CHAINS.keySet().retainAll(expressions);
+    }
+
+    /**
+     * Get the compiled form of the given expression if it's a plain property & method chain, see {@link CompiledChain}
+     *
+     * @param expression the expression
+     * @return the compiled chain, null if the expression has to be evaluated by SpEL
+     * @throws ParseException if the expression is invalid
+     */
+    public static CompiledChain getCompiledChain(String expression) throws ParseException {
+        Optional<CompiledChain> chain = COMPILED_CHAINS.get(expression);
+        if (chain == null) {
+            chain = Optional.ofNullable(CompiledChain.compile(parse(expression)));
+            COMPILED_CHAINS.put(expression, chain);
+        }
+        return chain.orElse(null);
+    }
+
+    /**
+     * Configure how expressions are evaluated, done when the config is (re)loaded
+     *
+     * @param restricted evaluate with a {@link SimpleEvaluationContext}: read-only properties and instance methods,
+     *                   no type references, constructors or bean references
+     * @param budgetNanos how long a single evaluation may take, 0 or less to not time evaluations
+     * @param maxOverBudget how many evaluations in a row may go over the budget before the alert gets disabled
+     */
+    public static void configure(boolean restricted, long budgetNanos, int maxOverBudget) {
+        SpELExpressionBuilder.restricted = restricted;
+        SpELExpressionBuilder.budgetNanos = budgetNanos;
+        SpELExpressionBuilder.maxOverBudget = Math.max(1, maxOverBudget);
+    }
+
+    public static boolean isRestricted() {
+        return restricted;
+    }
+
+    public static long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    public static int getMaxOverBudget() {
+        return maxOverBudget;
+    }
+
+    /**
+     * Find the part of the given expression that can't be evaluated in restricted mode
+     *
+     * @param parsed the parsed expression
+     * @return the offending part of the expression, or null if it can be evaluated in restricted mode
+     */
+    public static String findRestrictedViolation(Expression parsed) {
+        if (!(parsed instanceof SpelExpression)) return null;
+        return findRestrictedViolation(((SpelExpression) parsed).getAST());
+    }
+
+    private static String findRestrictedViolation(SpelNode node) {
+        if (node instanceof TypeReference || node instanceof ConstructorReference || node instanceof BeanReference) {
+            return node.toStringAST();
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            String violation = findRestrictedViolation(node.getChild(i));
+            if (violation != null) return violation;
+        }
+        return null;
+    }
+
+    public static CacheMetrics getCacheMetrics() {
+        return CACHE_METRICS;
     }
 
     public SpELExpressionBuilder withVariable(String key, Object value) {
@@ -52,11 +208,30 @@ public class SpELExpressionBuilder {
         return this;
     }
 
+    /**
+     * Time evaluations against the configured budget, see {@link #configure(boolean, long, int)}
+     *
+     * @param budget the budget of the alert the expression belongs to
+     * @return this builder
+     */
+    public SpELExpressionBuilder withBudget(ExpressionBudget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * Make the #plugins variable available, it's only looked up if the expression is evaluated by SpEL or uses it
+     */
     public SpELExpressionBuilder withPluginVariables() {
-        variables.put("plugins", Arrays.stream(Bukkit.getPluginManager().getPlugins())
+        pluginVariables = true;
+        return this;
+    }
+
+    private void resolvePluginVariables() {
+        if (!pluginVariables || variables.containsKey(PLUGINS_VARIABLE)) return;
+        variables.put(PLUGINS_VARIABLE, Arrays.stream(Bukkit.getPluginManager().getPlugins())
                 .collect(Collectors.toMap(Plugin::getName, plugin -> plugin))
         );
-        return this;
     }
 
     @SuppressWarnings("unchecked")
@@ -65,9 +240,47 @@ public class SpELExpressionBuilder {
     }
 
     public <T> T evaluate(Object root, Class<T> desiredType) throws ParseException, SpelEvaluationException {
+        if (budget == null || budgetNanos <= 0) return evaluateUntimed(root, desiredType);
+
+        long start = System.nanoTime();
+        try {
+            return evaluateUntimed(root, desiredType);
+        } finally {
+            budget.record(expression, System.nanoTime() - start);
+        }
+    }
+
+    private <T> T evaluateUntimed(Object root, Class<T> desiredType) {
+        if (compiled != null && desiredType == Boolean.class) {
+            if (compiled.usesVariable(PLUGINS_VARIABLE)) resolvePluginVariables();
+            Object value = compiled.evaluate(root, variables, restricted);
+            if (value != CompiledCondition.FALLBACK) return desiredType.cast(value);
+        } else if (desiredType == Object.class) {
+            CompiledChain chain = getCompiledChain(expression);
+            if (chain != null) {
+                if (chain.usesVariable(PLUGINS_VARIABLE)) resolvePluginVariables();
+                Object value = chain.evaluate(root, variables, restricted);
+                if (value != CompiledCondition.FALLBACK) return desiredType.cast(value);
+            }
+        }
+        resolvePluginVariables();
+        return (parsed != null ? parsed : parse(expression)).getValue(createContext(root), desiredType);
+    }
+
+    private EvaluationContext createContext(Object root) {
+        if (restricted) {
+            SimpleEvaluationContext context = SimpleEvaluationContext.forPropertyAccessors(RESTRICTED_PROPERTY_ACCESSOR)
+                    .withMethodResolvers(RESTRICTED_METHOD_RESOLVER)
+                    .withRootObject(root)
+                    .build();
+            variables.forEach(context::setVariable);
+            return context;
+        }
+
         StandardEvaluationContext context = new StandardEvaluationContext(root);
+        context.setPropertyAccessors(PROPERTY_ACCESSORS);
         context.setVariables(variables);
-        return PARSER.parseExpression(this.expression).getValue(context, desiredType);
+        return context;
     }
 
 }
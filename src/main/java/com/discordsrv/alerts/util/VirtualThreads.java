@@ -0,0 +1,50 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.util;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Virtual threads, for running blocking alert jobs without tying up platform threads.
+ * This is the Java 8 version, which has none: the plugin jar is a multi-release jar and Java 21+ loads the version
+ * from src/main/java21 instead (packaged in META-INF/versions/21), both must have the same public methods.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {}
+
+    /**
+     * @return true if the runtime supports virtual threads
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for every task
+     *
+     * @param name the name prefix of the threads
+     * @return the executor
+     * @throws UnsupportedOperationException if the runtime doesn't support virtual threads
+     */
+    public static ExecutorService newExecutor(String name) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+    }
+
+}
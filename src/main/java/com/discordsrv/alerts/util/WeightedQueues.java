@@ -0,0 +1,100 @@
+/*
+ * Alerts: A bukkit plugin to send customizable alerts to Discord driven by events and commands
+ * Copyright (C) 2021 Alerts contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.discordsrv.alerts.util;
+
+import com.discordsrv.alerts.alert.Priority;
+
+import java.util.ArrayDeque;
+
+/**
+ * A FIFO queue per {@link Priority}, polled by smooth weighted round robin: while several priorities have items queued,
+ * each gets a share of the polls according to its weight, spread out evenly. Not thread safe.
+ *
+ * @param <T> the type of the items
+ */
+public class WeightedQueues<T> {
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<T>[] queues = new ArrayDeque[PRIORITIES.length];
+    private final int[] current = new int[PRIORITIES.length];
+    private int size = 0;
+
+    public WeightedQueues() {
+        for (int i = 0; i < queues.length; i++) queues[i] = new ArrayDeque<>();
+    }
+
+    public void add(Priority priority, T item) {
+        queues[priority.ordinal()].add(item);
+        size++;
+    }
+
+    /**
+     * @return the next item, null if all queues are empty
+     */
+    public T poll() {
+        if (size == 0) return null;
+        int total = 0;
+        int selected = -1;
+        for (int i = 0; i < queues.length; i++) {
+            if (queues[i].isEmpty()) {
+                current[i] = 0;
+                continue;
+            }
+            int weight = PRIORITIES[i].getWeight();
+            current[i] += weight;
+            total += weight;
+            if (selected == -1 || current[i] > current[selected]) selected = i;
+        }
+        current[selected] -= total;
+        size--;
+        return queues[selected].poll();
+    }
+
+    /**
+     * @return the oldest item of the given priority, null if none is queued
+     */
+    public T peek(Priority priority) {
+        return queues[priority.ordinal()].peek();
+    }
+
+    /**
+     * @return true if an item of the given priority, or a higher one, is queued
+     */
+    public boolean hasQueued(Priority priority) {
+        for (int i = 0; i <= priority.ordinal(); i++) {
+            if (!queues[i].isEmpty()) return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int size(Priority priority) {
+        return queues[priority.ordinal()].size();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+}